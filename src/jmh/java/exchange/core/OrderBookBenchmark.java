@@ -0,0 +1,75 @@
+package exchange.core;
+
+import exchange.constant.OrderSide;
+import exchange.model.Account;
+import exchange.model.Fill;
+import exchange.model.Order;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBookBenchmark {
+    static final long MID = 1_000_000L;
+
+    @Param({"10", "100", "1000"})
+    int depth;
+
+    @Param({"0.0", "0.1", "0.5"})
+    double crossRatio;
+
+    final Account account = new Account();
+    OrderBook book;
+    SplittableRandom random;
+    long nextId;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        book = new OrderBook("A", "B", "AB");
+        random = new SplittableRandom(42L);
+        nextId = 0L;
+        for (int i = 1; i <= depth; i++) {
+            book.place(order(MID - i, Long.MAX_VALUE / 4), OrderSide.BID, 0L);
+            book.place(order(MID + i, Long.MAX_VALUE / 4), OrderSide.ASK, 0L);
+        }
+        book.match(0L);
+    }
+
+    Order order(long price, long volume) {
+        Order order = new Order(price, volume, account);
+        order.setId(nextId++);
+        return order;
+    }
+
+    long restingOffset() {
+        return 1 + random.nextInt(depth);
+    }
+
+    @Benchmark
+    public List<Fill> placeBid() {
+        return book.placeBid(order(MID - restingOffset(), 1L)).block();
+    }
+
+    @Benchmark
+    public List<Fill> placeAsk() {
+        return book.placeAsk(order(MID + restingOffset(), 1L)).block();
+    }
+
+    @Benchmark
+    public List<Fill> placeAndMatch() {
+        boolean cross = random.nextDouble() < crossRatio;
+        if (random.nextBoolean()) {
+            book.placeBid(order(cross ? MID + 1 : MID - restingOffset(), 1L));
+        } else {
+            book.placeAsk(order(cross ? MID - 1 : MID + restingOffset(), 1L));
+        }
+        return book.match(nextId);
+    }
+}
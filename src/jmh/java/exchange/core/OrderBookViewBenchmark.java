@@ -0,0 +1,47 @@
+package exchange.core;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import exchange.model.Account;
+import exchange.model.Order;
+import exchange.view.OrderBookView;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBookViewBenchmark {
+    @Param({"10", "100", "1000"})
+    int depth;
+
+    @Param({"0", "20"})
+    int levels;
+
+    final ObjectMapper mapper = new ObjectMapper();
+    OrderBook book;
+
+    @Setup
+    public void setUp() {
+        book = new OrderBook("A", "B", "AB");
+        Account account = new Account();
+        for (int i = 1; i <= depth; i++) {
+            book.placeBid(new Order(1000L - i, 10L, account));
+            book.placeAsk(new Order(1000L + i, 10L, account));
+        }
+    }
+
+    @Benchmark
+    public OrderBookView construct() {
+        return new OrderBookView(book, levels);
+    }
+
+    @Benchmark
+    public String serialise() throws JsonProcessingException {
+        return mapper.writeValueAsString(new OrderBookView(book, levels));
+    }
+}
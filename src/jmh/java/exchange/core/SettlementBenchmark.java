@@ -0,0 +1,69 @@
+package exchange.core;
+
+import exchange.constant.MatchingMode;
+import exchange.constant.OrderSide;
+import exchange.model.Account;
+import exchange.model.AssetDelta;
+import exchange.model.Order;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SettlementBenchmark {
+    @Param({"10", "1000"})
+    int fills;
+
+    @Param({"2", "100"})
+    int accounts;
+
+    InMemoryAccounts store;
+    AssetManager manager;
+    OrderBook book;
+    Account[] traders;
+    SettlementBatch batch;
+    long step;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        store = new InMemoryAccounts();
+        manager = store.manager();
+        book = manager.getOrderBook("A", "B").block();
+        manager.setMatchingMode(book, MatchingMode.CONTINUOUS).block();
+        traders = new Account[accounts];
+        for (int i = 0; i < accounts; i++) {
+            traders[i] = store.getAccountByName("trader" + i).orElseThrow();
+            store.transfer(traders[i], "A", Long.MAX_VALUE / 4);
+            store.transfer(traders[i], "B", Long.MAX_VALUE / 4);
+        }
+        OrderBook scratch = new OrderBook("A", "B", "AB");
+        for (int i = 0; i < fills; i++) {
+            Order ask = new Order(100L, 1L, traders[i % accounts]);
+            ask.setId(2L * i);
+            Order bid = new Order(100L, 1L, traders[(i + 1) % accounts]);
+            bid.setId(2L * i + 1);
+            scratch.place(ask, OrderSide.ASK, i);
+            scratch.place(bid, OrderSide.BID, i);
+        }
+        batch = new SettlementBatch(scratch, scratch.match(fills));
+        step = 0L;
+    }
+
+    @Benchmark
+    public List<AssetDelta> netTransfers() {
+        return batch.netTransfers();
+    }
+
+    @Benchmark
+    public Order placeCrossingOrder() {
+        Account trader = traders[(int) (step % accounts)];
+        OrderSide side = (step++ & 1) == 0 ? OrderSide.ASK : OrderSide.BID;
+        return manager.placeOrder(book, new Order(100L, 1L, trader), side).block();
+    }
+}
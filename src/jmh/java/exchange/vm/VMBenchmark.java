@@ -0,0 +1,80 @@
+package exchange.vm;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VMBenchmark {
+    static final String SUM_LOOP = """
+            loadk 0
+            store $i
+            loadk 0
+            store $sum
+            :loop
+            load $sum
+            load $i
+            add
+            store $sum
+            load $i
+            loadk 1
+            add
+            dup
+            store $i
+            loadk 1000
+            cmp
+            brLT :loop
+            load $sum
+            """;
+
+    static final String NESTED_CALLS = """
+            loadk 10
+            store $n
+            call :square
+            load $n
+            loadk 3
+            mul
+            add
+            exit
+            :square {
+                load $n
+                dup
+                mul
+                ret
+            }
+            """;
+
+    @Param({"SUM_LOOP", "NESTED_CALLS"})
+    String program;
+
+    String source;
+    Script script;
+
+    @Setup
+    public void setUp() {
+        source = program.equals("SUM_LOOP") ? SUM_LOOP : NESTED_CALLS;
+        script = Compiler.compile(source);
+    }
+
+    @Benchmark
+    public Script compile() {
+        return Compiler.compile(source);
+    }
+
+    @Benchmark
+    public ScriptResult run() {
+        return VM.exec(script).result();
+    }
+
+    @Benchmark
+    public int runReused() {
+        VM vm = VM.local();
+        vm.run(script);
+        return vm.top();
+    }
+}
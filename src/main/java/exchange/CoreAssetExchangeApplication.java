@@ -2,8 +2,11 @@ package exchange;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
 
-@SpringBootApplication
+// a ConnectionFactory bean would switch off the JDBC DataSource that JPA and the ledger rely on,
+// so R2dbcAccountStore owns its connection factory instead
+@SpringBootApplication(exclude = R2dbcAutoConfiguration.class)
 public class CoreAssetExchangeApplication {
 
     public static void main(String[] args) {
@@ -1,39 +1,140 @@
 package exchange.api;
 
+import exchange.constant.CandleInterval;
+import exchange.constant.MatchingMode;
 import exchange.constant.OrderSide;
 import exchange.core.AssetManager;
+import exchange.core.OrderBatch;
+import exchange.core.OrderBook;
+import exchange.core.TradeHistory;
+import exchange.model.Account;
 import exchange.model.Order;
+import exchange.model.OrderRequest;
 import exchange.model.Tx;
+import exchange.sim.SimulationConfig;
+import exchange.sim.SimulationReport;
+import exchange.sim.Simulator;
+import exchange.strategy.Strategy;
+import exchange.strategy.StrategyScheduler;
 import exchange.view.AccountView;
+import exchange.view.CandleView;
+import exchange.view.DepthDeltaView;
 import exchange.view.OrderBookView;
-import exchange.vm.Compiler;
+import exchange.view.StreamStatsView;
+import exchange.view.TradePageView;
+import exchange.vm.ScriptCache;
 import exchange.vm.ScriptResult;
 import exchange.vm.VM;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuples;
+
+import java.util.List;
+import java.util.Map;
 
 
 @RestController
 public class CoreAssetExchangeController {
+    static final int MAX_TRADE_PAGE = 1000;
+
     @Autowired
     AssetManager assetManager;
 
+    @Autowired
+    Simulator simulator;
+
+    @Autowired
+    ScriptCache scriptCache;
+
+    @Autowired
+    StrategyScheduler strategyScheduler;
+
     @PostMapping("/book/{base}/{quote}")
     public Mono<OrderBookView> createOrderBook(@PathVariable("base") String base, @PathVariable("quote") String quote) {
         return assetManager
                 .getOrderBook(base, quote)
-                .map(ob -> new OrderBookView(ob, assetManager));
+                .map(ob -> new OrderBookView(ob, 0));
     }
 
     @GetMapping("/book/{base}/{quote}")
-    public Mono<OrderBookView> getOrderBook(@PathVariable("base") String base, @PathVariable("quote") String quote) {
+    public Mono<OrderBookView> getOrderBook(@PathVariable("base") String base, @PathVariable("quote") String quote,
+                                            @RequestParam(value = "depth", defaultValue = "0") Integer depth) {
+        return assetManager
+                .getOrderBook(base, quote)
+                .map(ob -> new OrderBookView(ob, depth));
+    }
+
+    @GetMapping(path = "/book/{base}/{quote}/depth/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<DepthDeltaView>> subscribeToDepth(@PathVariable("base") String base,
+                                                                  @PathVariable("quote") String quote) {
+        return assetManager
+                .getOrderBook(base, quote)
+                .flatMapMany(ob -> ob.getDepthSink().asFlux()
+                        .map(delta -> ServerSentEvent.builder(delta).id(Long.toString(delta.sequence)).build()));
+    }
+
+    @GetMapping("/book/{base}/{quote}/trades")
+    public Mono<TradePageView> getTrades(@PathVariable("base") String base, @PathVariable("quote") String quote,
+                                         @RequestParam(value = "from", required = false) Long from,
+                                         @RequestParam(value = "since", required = false) Long since,
+                                         @RequestParam(value = "limit", defaultValue = "100") Integer limit) {
+        return assetManager
+                .getOrderBook(base, quote)
+                .map(ob -> {
+                    TradeHistory trades = ob.getTrades();
+                    long start = from != null ? from : since != null ? trades.seekTime(since) : 0L;
+                    return new TradePageView(ob.getName(), start, trades.size(),
+                            trades.read(start, Math.min(limit, MAX_TRADE_PAGE)));
+                });
+    }
+
+    @GetMapping("/book/{base}/{quote}/candles")
+    public Mono<List<CandleView>> getCandles(@PathVariable("base") String base, @PathVariable("quote") String quote,
+                                             @RequestParam(value = "interval", defaultValue = "1m") String interval,
+                                             @RequestParam(value = "since", required = false) Long since,
+                                             @RequestParam(value = "limit", defaultValue = "100") Integer limit) {
+        CandleInterval candleInterval = CandleInterval.parse(interval);
+        return assetManager
+                .getOrderBook(base, quote)
+                .map(ob -> since != null
+                        ? ob.getCandles(candleInterval).since(since, limit)
+                        : ob.getCandles(candleInterval).latest(limit));
+    }
+
+    @GetMapping(path = "/book/{base}/{quote}/candles/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<CandleView>> subscribeToCandles(@PathVariable("base") String base,
+                                                                @PathVariable("quote") String quote,
+                                                                @RequestParam(value = "interval", defaultValue = "1m") String interval) {
+        String label = CandleInterval.parse(interval).getLabel();
         return assetManager
                 .getOrderBook(base, quote)
-                .map(ob -> new OrderBookView(ob, assetManager));
+                .flatMapMany(ob -> ob.getCandleSink().asFlux()
+                        .filter(candle -> candle.interval.equals(label))
+                        .map(candle -> ServerSentEvent.builder(candle).build()));
+    }
+
+    @PutMapping("/book/{base}/{quote}/mode")
+    public Mono<OrderBookView> setMatchingMode(@PathVariable("base") String base, @PathVariable("quote") String quote,
+                                               @RequestParam("mode") MatchingMode mode) {
+        return assetManager
+                .getOrderBook(base, quote)
+                .flatMap(ob -> assetManager.setMatchingMode(ob, mode))
+                .map(ob -> new OrderBookView(ob, 0));
+    }
+
+    @GetMapping("/book/{base}/{quote}/stream/stats")
+    public Mono<Map<String, StreamStatsView>> getStreamStats(@PathVariable("base") String base,
+                                                             @PathVariable("quote") String quote) {
+        return assetManager
+                .getOrderBook(base, quote)
+                .map(OrderBook::getStreamStats);
     }
 
     @GetMapping(path = "/book/{base}/{quote}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
@@ -44,18 +145,24 @@ public class CoreAssetExchangeController {
                 .flatMapMany(ob -> ob.getSink().asFlux().map(tx -> ServerSentEvent.builder(tx).build()));
     }
 
+    Mono<AccountView> accountView(Account account) {
+        return assetManager
+                .fetchPublicAssets(account)
+                .map(assets -> new AccountView(account, assets));
+    }
+
     @PostMapping("/account/{account}")
     public Mono<AccountView> createAccount(@PathVariable("account") String name) {
         return assetManager
                 .getAccount(name)
-                .map(account -> new AccountView(account, assetManager));
+                .flatMap(this::accountView);
     }
 
     @GetMapping("/account/{account}")
     public Mono<AccountView> getAccount(@PathVariable("account") String name) {
         return assetManager
                 .getAccount(name)
-                .map(account -> new AccountView(account, assetManager));
+                .flatMap(this::accountView);
     }
 
     @PostMapping("/account/{account}/deposit/{asset}")
@@ -63,10 +170,9 @@ public class CoreAssetExchangeController {
                                            @RequestParam("volume") Long volume) {
         return assetManager
                 .getAccount(name)
-                .map(account -> {
-                    assetManager.transferTo(account, asset, volume, "deposit");
-                    return new AccountView(account, assetManager);
-                });
+                .flatMap(account -> assetManager
+                        .deposit(account, asset, volume)
+                        .then(accountView(account)));
     }
 
     @PostMapping("/book/{base}/{quote}/bid")
@@ -82,7 +188,9 @@ public class CoreAssetExchangeController {
                         tuple.getT2(),
                         new Order(price, volume, tuple.getT1()),
                         OrderSide.BID
-                ));
+                ))
+                .onErrorMap(ex -> ex instanceof IllegalArgumentException || ex instanceof ArithmeticException,
+                        ex -> new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage()));
     }
 
     @PostMapping("/book/{base}/{quote}/ask")
@@ -98,7 +206,28 @@ public class CoreAssetExchangeController {
                         tuple.getT2(),
                         new Order(price, volume, tuple.getT1()),
                         OrderSide.ASK
-                ));
+                ))
+                .onErrorMap(ex -> ex instanceof IllegalArgumentException || ex instanceof ArithmeticException,
+                        ex -> new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage()));
+    }
+
+    @PostMapping("/account/{account}/orders")
+    public Mono<List<Order>> placeOrders(@PathVariable("account") String name,
+                                         @RequestBody List<OrderRequest> requests) {
+        for (OrderRequest request : requests) {
+            if (request == null || request.base == null || request.quote == null || request.side == null) {
+                return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Every order needs base, quote and side"));
+            }
+        }
+        return assetManager.getAccount(name)
+                .flatMap(account -> Flux.fromIterable(requests)
+                        .concatMap(request -> assetManager
+                                .getOrderBook(request.base, request.quote)
+                                .map(book -> Tuples.of(book, new Order(request.price, request.volume, account), request.side)))
+                        .reduceWith(OrderBatch::new, (batch, entry) -> batch.add(entry.getT1(), entry.getT2(), entry.getT3())))
+                .flatMap(assetManager::placeOrders)
+                .onErrorMap(ex -> ex instanceof IllegalArgumentException || ex instanceof ArithmeticException,
+                        ex -> new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage()));
     }
 
     @PostMapping("/tick")
@@ -106,12 +235,51 @@ public class CoreAssetExchangeController {
             @RequestParam(value = "steps", defaultValue = "1") Integer steps
     ) {
         return Flux.range(0, steps)
-                .flatMap(step -> assetManager.advance())
+                .concatMap(step -> assetManager.advance())
                 .reduce(Long::sum);
     }
 
+    @PostMapping("/sim")
+    public Mono<SimulationReport> simulate(@RequestBody SimulationConfig config) {
+        return Mono.fromCallable(() -> simulator.run(config))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @PostMapping("/strategy")
+    public Mono<Strategy> registerStrategy(@RequestBody String script,
+                                           @RequestParam("base") String base,
+                                           @RequestParam("quote") String quote,
+                                           @RequestParam("account") String account,
+                                           @RequestParam(value = "budget", defaultValue = "0") Integer budget) {
+        return assetManager
+                .getOrderBook(base, quote)
+                .zipWith(assetManager.getAccount(account))
+                .flatMap(result -> Mono.fromCallable(() ->
+                        strategyScheduler.register(assetManager, result.getT1(), result.getT2(), script, budget)));
+    }
+
+    @GetMapping("/strategy")
+    public Flux<Strategy> getStrategies() {
+        return Flux.fromIterable(strategyScheduler.getStrategies());
+    }
+
+    @DeleteMapping("/strategy/{id}")
+    public Mono<Boolean> deleteStrategy(@PathVariable("id") Long id) {
+        return Mono.just(strategyScheduler.remove(id));
+    }
+
     @PostMapping("/exec")
-    public ScriptResult exec(@RequestBody String script) {
-        return VM.exec(Compiler.compile(script)).result();
+    public ScriptResult exec(@RequestBody String script,
+                             @RequestParam(value = "base", required = false) String base,
+                             @RequestParam(value = "quote", required = false) String quote,
+                             @RequestParam(value = "account", required = false) String account) {
+        VM vm = VM.local();
+        if (base != null && quote != null) {
+            OrderBook book = assetManager.getOrderBook(base, quote).block();
+            Account trader = account == null ? null : assetManager.getAccount(account).block();
+            vm.bind(assetManager.oneOffContext(book, trader));
+        }
+        vm.run(scriptCache.get(script));
+        return vm.result();
     }
 }
@@ -0,0 +1,216 @@
+package exchange.api;
+
+import exchange.cluster.ClusterRouter;
+import exchange.constant.OrderSide;
+import exchange.core.AssetManager;
+import exchange.core.OrderBook;
+import exchange.exc.EngineBusy;
+import exchange.exc.InsufficientAssets;
+import exchange.exc.WrongNode;
+import exchange.model.Account;
+import exchange.model.Order;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.BinaryWebSocketHandler;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static exchange.api.OrderEntryProtocol.*;
+
+/**
+ * Persistent binary order entry over a WebSocket. Each request is answered by exactly one 32-byte
+ * ack or reject carrying the client's sequence number. A session's requests are processed one
+ * after another in the order they arrive, so orders reach their books in the order they were sent;
+ * clients still pipeline up to exchange.ws.max-in-flight requests and more are rejected as THROTTLED.
+ */
+@Component
+@Slf4j
+public class OrderEntryHandler extends BinaryWebSocketHandler {
+    static final String STATE = "orderEntry";
+
+    @Value("${exchange.ws.send-time-limit-ms:5000}")
+    int sendTimeLimitMs = 5000;
+
+    @Value("${exchange.ws.send-buffer-size:1048576}")
+    int sendBufferSize = 1 << 20;
+
+    @Value("${exchange.ws.max-in-flight:1024}")
+    int maxInFlight = OrderEntrySession.MAX_IN_FLIGHT;
+
+    @Autowired
+    AssetManager assetManager;
+
+    @Autowired
+    ClusterRouter clusterRouter;
+
+    static class OrderEntrySession {
+        static final int MAX_IN_FLIGHT = 1024;
+
+        final WebSocketSession out;
+        final OrderBook[] books = new OrderBook[SLOTS];
+        final int maxInFlight;
+        final AtomicInteger inFlight = new AtomicInteger();
+        volatile Account account;
+        Mono<Void> tail = Mono.empty();
+
+        OrderEntrySession(WebSocketSession out) {
+            this(out, MAX_IN_FLIGHT);
+        }
+
+        OrderEntrySession(WebSocketSession out, int maxInFlight) {
+            this.out = out;
+            this.maxInFlight = maxInFlight;
+        }
+
+        // only the completion of the latest request is kept; it in turn waits for the one before
+        synchronized Mono<ByteBuffer> enqueue(Mono<ByteBuffer> request, long sequence, int slot) {
+            if (inFlight.incrementAndGet() > maxInFlight) {
+                inFlight.decrementAndGet();
+                return Mono.just(reject(sequence, slot, THROTTLED));
+            }
+            Sinks.Empty<Void> done = Sinks.empty();
+            Mono<Void> previous = tail;
+            tail = done.asMono();
+            // released before the answer is passed on, so the slot is free by the time the client sees it
+            AtomicBoolean released = new AtomicBoolean();
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    inFlight.decrementAndGet();
+                    done.tryEmitEmpty();
+                }
+            };
+            return previous.then(request).doOnSuccess(answer -> release.run()).doOnError(ex -> release.run())
+                    .doOnCancel(release);
+        }
+
+        void send(ByteBuffer message) {
+            try {
+                out.sendMessage(new BinaryMessage(message));
+            } catch (IOException | IllegalStateException ex) {
+                log.debug("Dropping ack for closed session {}", out.getId(), ex);
+            }
+        }
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        session.getAttributes().put(STATE, new OrderEntrySession(
+                new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs, sendBufferSize), maxInFlight));
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        OrderEntrySession state = (OrderEntrySession) session.getAttributes().get(STATE);
+        ByteBuffer payload = message.getPayload();
+        boolean framed = payload.remaining() >= HEADER_SIZE;
+        long sequence = framed ? sequence(payload) : 0L;
+        int slot = framed ? slot(payload) : 0;
+        handle(state, payload).subscribe(state::send, ex -> {
+            log.warn("Request {} failed", sequence, ex);
+            state.send(reject(sequence, slot, ERROR));
+        });
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        session.getAttributes().remove(STATE);
+    }
+
+    Mono<ByteBuffer> handle(OrderEntrySession state, ByteBuffer message) {
+        if (message.remaining() < HEADER_SIZE) {
+            return Mono.just(reject(0L, 0, BAD_MESSAGE));
+        }
+        long sequence = sequence(message);
+        int slot = slot(message);
+        Mono<ByteBuffer> request = switch (type(message)) {
+            case LOGON -> orReject(logon(state, message, sequence), sequence, 0);
+            case BIND -> orReject(bind(state, message, sequence, slot), sequence, slot);
+            case NEW_ORDER -> newOrder(state, message, sequence, slot);
+            default -> Mono.just(reject(sequence, slot, BAD_MESSAGE));
+        };
+        return state.enqueue(request, sequence, slot);
+    }
+
+    Mono<ByteBuffer> orReject(Mono<ByteBuffer> request, long sequence, int slot) {
+        return request.onErrorResume(ex -> {
+            log.warn("Request {} failed", sequence, ex);
+            return Mono.just(reject(sequence, slot, ERROR));
+        });
+    }
+
+    Mono<ByteBuffer> logon(OrderEntrySession state, ByteBuffer message, long sequence) {
+        int length = message.get(LENGTH) & 0xFF;
+        if (length == 0 || message.remaining() < HEADER_SIZE + length) {
+            return Mono.just(reject(sequence, 0, BAD_MESSAGE));
+        }
+        return assetManager.getAccount(text(message, HEADER_SIZE, length))
+                .map(account -> {
+                    state.account = account;
+                    return ack(sequence, 0, 0L, 0L);
+                })
+                .defaultIfEmpty(reject(sequence, 0, ERROR));
+    }
+
+    Mono<ByteBuffer> bind(OrderEntrySession state, ByteBuffer message, long sequence, int slot) {
+        int baseLength = message.get(LENGTH) & 0xFF;
+        int quoteLength = message.get(SECOND_LENGTH) & 0xFF;
+        if (baseLength == 0 || quoteLength == 0 || message.remaining() < HEADER_SIZE + baseLength + quoteLength) {
+            return Mono.just(reject(sequence, slot, BAD_MESSAGE));
+        }
+        String base = text(message, HEADER_SIZE, baseLength);
+        String quote = text(message, HEADER_SIZE + baseLength, quoteLength);
+        if (clusterRouter.isEnabled() && !clusterRouter.isLocal(base + quote)) {
+            return Mono.just(reject(sequence, slot, WRONG_NODE));
+        }
+        return assetManager.getOrderBook(base, quote)
+                .map(book -> {
+                    state.books[slot] = book;
+                    return ack(sequence, slot, 0L, 0L);
+                });
+    }
+
+    Mono<ByteBuffer> newOrder(OrderEntrySession state, ByteBuffer message, long sequence, int slot) {
+        if (message.remaining() < MESSAGE_SIZE) {
+            return Mono.just(reject(sequence, slot, BAD_MESSAGE));
+        }
+        int side = message.get(SIDE);
+        long price = message.getLong(PRICE);
+        long volume = message.getLong(VOLUME);
+        if (side < 0 || side >= OrderSide.values().length || price <= 0 || volume <= 0) {
+            return Mono.just(reject(sequence, slot, BAD_MESSAGE));
+        }
+        // the container reuses the payload buffer, so everything is read before waiting on earlier requests
+        return Mono.defer(() -> place(state, sequence, slot, OrderSide.values()[side], price, volume));
+    }
+
+    Mono<ByteBuffer> place(OrderEntrySession state, long sequence, int slot, OrderSide side, long price, long volume) {
+        Account account = state.account;
+        if (account == null) {
+            return Mono.just(reject(sequence, slot, NOT_LOGGED_ON));
+        }
+        OrderBook book = state.books[slot];
+        if (book == null) {
+            return Mono.just(reject(sequence, slot, UNKNOWN_BOOK));
+        }
+        return assetManager.placeOrder(book, new Order(price, volume, account), side)
+                .map(order -> ack(sequence, slot, order.getId(), order.getFilled()))
+                .onErrorResume(InsufficientAssets.class, ex -> Mono.just(reject(sequence, slot, INSUFFICIENT_ASSETS)))
+                .onErrorResume(WrongNode.class, ex -> Mono.just(reject(sequence, slot, WRONG_NODE)))
+                .onErrorResume(EngineBusy.class, ex -> Mono.just(reject(sequence, slot, THROTTLED)))
+                .onErrorResume(ex -> {
+                    log.warn("Order {} on {} failed", sequence, book.getName(), ex);
+                    return Mono.just(reject(sequence, slot, ERROR));
+                });
+    }
+}
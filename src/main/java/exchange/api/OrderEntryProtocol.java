@@ -0,0 +1,114 @@
+package exchange.api;
+
+import exchange.constant.OrderSide;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary order-entry messages, big-endian. Every request starts with the same 16-byte header,
+ * type at 0, side at 1, book slot at 2, a length at 3 and the client sequence number at 8, which
+ * is echoed in the 32-byte ack so clients can keep many requests in flight.
+ * <pre>
+ * LOGON      header, account name (length at 3)
+ * BIND       header, base then quote (lengths at 3 and 4), binds them to the slot
+ * NEW_ORDER  header, price at 16, volume at 24 (32 bytes)
+ * ACK/REJECT type, status at 1, slot at 2, sequence at 8, order id at 16, filled volume at 24
+ * </pre>
+ */
+public class OrderEntryProtocol {
+    public static final byte LOGON = 1;
+    public static final byte BIND = 2;
+    public static final byte NEW_ORDER = 3;
+    public static final byte ACK = (byte) 0x81;
+    public static final byte REJECT = (byte) 0x82;
+
+    public static final byte OK = 0;
+    public static final byte INSUFFICIENT_ASSETS = 1;
+    public static final byte NOT_LOGGED_ON = 2;
+    public static final byte UNKNOWN_BOOK = 3;
+    public static final byte BAD_MESSAGE = 4;
+    public static final byte WRONG_NODE = 5;
+    public static final byte ERROR = 6;
+    public static final byte THROTTLED = 7;
+
+    public static final int HEADER_SIZE = 16;
+    public static final int MESSAGE_SIZE = 32;
+    public static final int SLOTS = 256;
+
+    static final int SIDE = 1;
+    static final int SLOT = 2;
+    static final int LENGTH = 3;
+    static final int SECOND_LENGTH = 4;
+    static final int SEQUENCE = 8;
+    static final int PRICE = 16;
+    static final int VOLUME = 24;
+
+    public static ByteBuffer logon(long sequence, String account) {
+        byte[] name = account.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = header(LOGON, 0, 0, sequence, HEADER_SIZE + name.length);
+        buffer.put(LENGTH, (byte) name.length).put(HEADER_SIZE, name);
+        return buffer;
+    }
+
+    public static ByteBuffer bind(long sequence, int slot, String base, String quote) {
+        byte[] left = base.getBytes(StandardCharsets.UTF_8);
+        byte[] right = quote.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = header(BIND, 0, slot, sequence, HEADER_SIZE + left.length + right.length);
+        buffer.put(LENGTH, (byte) left.length).put(SECOND_LENGTH, (byte) right.length)
+                .put(HEADER_SIZE, left).put(HEADER_SIZE + left.length, right);
+        return buffer;
+    }
+
+    public static ByteBuffer newOrder(long sequence, int slot, OrderSide side, long price, long volume) {
+        ByteBuffer buffer = header(NEW_ORDER, side.ordinal(), slot, sequence, MESSAGE_SIZE);
+        buffer.putLong(PRICE, price).putLong(VOLUME, volume);
+        return buffer;
+    }
+
+    public static ByteBuffer ack(long sequence, int slot, long orderId, long filled) {
+        ByteBuffer buffer = header(ACK, OK, slot, sequence, MESSAGE_SIZE);
+        buffer.putLong(PRICE, orderId).putLong(VOLUME, filled);
+        return buffer;
+    }
+
+    public static ByteBuffer reject(long sequence, int slot, byte status) {
+        return header(REJECT, status, slot, sequence, MESSAGE_SIZE);
+    }
+
+    static ByteBuffer header(byte type, int second, int slot, long sequence, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(0, type).put(SIDE, (byte) second).put(SLOT, (byte) slot).putLong(SEQUENCE, sequence);
+        return buffer;
+    }
+
+    public static byte type(ByteBuffer message) {
+        return message.get(0);
+    }
+
+    public static byte status(ByteBuffer message) {
+        return message.get(SIDE);
+    }
+
+    public static int slot(ByteBuffer message) {
+        return message.get(SLOT) & 0xFF;
+    }
+
+    public static long sequence(ByteBuffer message) {
+        return message.getLong(SEQUENCE);
+    }
+
+    public static long orderId(ByteBuffer ack) {
+        return ack.getLong(PRICE);
+    }
+
+    public static long filled(ByteBuffer ack) {
+        return ack.getLong(VOLUME);
+    }
+
+    static String text(ByteBuffer message, int offset, int length) {
+        byte[] bytes = new byte[length];
+        message.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
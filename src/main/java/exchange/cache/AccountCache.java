@@ -0,0 +1,110 @@
+package exchange.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import exchange.model.Account;
+import exchange.util.LruCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Two-tier account lookup: a bounded per-node LRU in front of the shared remote cache, which in
+ * turn sits in front of the database. Writes delete the shared entry and broadcast the name so
+ * every node drops its near copy. If the remote tier is unreachable, lookups fall through to
+ * the loader. Only the account id goes to the shared tier; credentials stay in the database, so
+ * an account found there carries no password.
+ */
+@Component
+@Slf4j
+public class AccountCache {
+    static final String KEY_PREFIX = "exchange:account:";
+    static final String CHANNEL = "exchange:account-invalidations";
+
+    @Value("${exchange.cache.enabled:false}")
+    boolean enabled = false;
+
+    @Value("${exchange.cache.near-size:10000}")
+    int nearSize = 10000;
+
+    @Value("${exchange.cache.ttl-seconds:300}")
+    long ttlSeconds = 300L;
+
+    @Autowired
+    RemoteCache remote;
+
+    final ObjectMapper json = new ObjectMapper();
+    LruCache<String, Account> near;
+
+    record CachedAccount(String id) {
+    }
+
+    @PostConstruct
+    public void start() {
+        near = new LruCache<>(nearSize);
+        if (enabled) {
+            remote.subscribe(CHANNEL, near::remove);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Optional<Account> get(String name, Function<String, Optional<Account>> loader) {
+        Account account = near.get(name);
+        if (account != null) return Optional.of(account);
+        account = fetch(name);
+        if (account == null) {
+            Optional<Account> loaded = loader.apply(name);
+            if (loaded.isEmpty()) return loaded;
+            account = loaded.get();
+            store(account);
+        }
+        near.put(name, account);
+        return Optional.of(account);
+    }
+
+    public void invalidate(String name) {
+        near.remove(name);
+        try {
+            remote.delete(KEY_PREFIX + name);
+            remote.publish(CHANNEL, name);
+        } catch (RuntimeException ex) {
+            log.warn("Could not invalidate cached account {}", name, ex);
+        }
+    }
+
+    public LruCache<String, Account> getNear() {
+        return near;
+    }
+
+    Account fetch(String name) {
+        try {
+            Optional<String> value = remote.get(KEY_PREFIX + name);
+            if (value.isEmpty()) return null;
+            CachedAccount cached = json.readValue(value.get(), CachedAccount.class);
+            Account account = new Account();
+            account.setId(cached.id());
+            return account;
+        } catch (JsonProcessingException | RuntimeException ex) {
+            log.warn("Remote account cache read failed for {}", name, ex);
+            return null;
+        }
+    }
+
+    void store(Account account) {
+        try {
+            String value = json.writeValueAsString(new CachedAccount(account.getId()));
+            remote.put(KEY_PREFIX + account.getId(), value, Duration.ofSeconds(ttlSeconds));
+        } catch (JsonProcessingException | RuntimeException ex) {
+            log.warn("Remote account cache write failed for {}", account.getId(), ex);
+        }
+    }
+}
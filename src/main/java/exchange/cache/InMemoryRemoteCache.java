@@ -0,0 +1,59 @@
+package exchange.cache;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Process-local stand-in for Redis, for single-node setups and tests. Instances shared between
+ * several caches behave like one Redis server seen by several nodes.
+ */
+@Component
+@ConditionalOnProperty(name = "exchange.cache.remote", havingValue = "memory", matchIfMissing = true)
+public class InMemoryRemoteCache implements RemoteCache {
+    record Entry(String value, long expiresAt) {
+    }
+
+    final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    final Map<String, List<Consumer<String>>> channels = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<String> get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) return Optional.empty();
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            return Optional.empty();
+        }
+        return Optional.of(entry.value);
+    }
+
+    @Override
+    public void put(String key, String value, Duration ttl) {
+        entries.put(key, new Entry(value, System.currentTimeMillis() + ttl.toMillis()));
+    }
+
+    @Override
+    public void delete(String key) {
+        entries.remove(key);
+    }
+
+    @Override
+    public void publish(String channel, String message) {
+        for (Consumer<String> listener : channels.getOrDefault(channel, List.of())) {
+            listener.accept(message);
+        }
+    }
+
+    @Override
+    public void subscribe(String channel, Consumer<String> listener) {
+        channels.computeIfAbsent(channel, name -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+}
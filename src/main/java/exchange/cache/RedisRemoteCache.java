@@ -0,0 +1,66 @@
+package exchange.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+@Component
+@ConditionalOnProperty(name = "exchange.cache.remote", havingValue = "redis")
+public class RedisRemoteCache implements RemoteCache {
+    @Autowired
+    StringRedisTemplate redis;
+
+    @Autowired
+    RedisConnectionFactory connectionFactory;
+
+    RedisMessageListenerContainer listeners;
+
+    @Override
+    public Optional<String> get(String key) {
+        return Optional.ofNullable(redis.opsForValue().get(key));
+    }
+
+    @Override
+    public void put(String key, String value, Duration ttl) {
+        redis.opsForValue().set(key, value, ttl);
+    }
+
+    @Override
+    public void delete(String key) {
+        redis.delete(key);
+    }
+
+    @Override
+    public void publish(String channel, String message) {
+        redis.convertAndSend(channel, message);
+    }
+
+    @Override
+    public synchronized void subscribe(String channel, Consumer<String> listener) {
+        if (listeners == null) {
+            listeners = new RedisMessageListenerContainer();
+            listeners.setConnectionFactory(connectionFactory);
+            listeners.afterPropertiesSet();
+            listeners.start();
+        }
+        listeners.addMessageListener((message, pattern) -> listener.accept(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(channel));
+    }
+
+    @PreDestroy
+    public synchronized void stop() throws Exception {
+        if (listeners != null) {
+            listeners.destroy();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package exchange.cache;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Shared second-level cache and invalidation bus used behind the per-node near-caches.
+ */
+public interface RemoteCache {
+    Optional<String> get(String key);
+
+    void put(String key, String value, Duration ttl);
+
+    void delete(String key);
+
+    void publish(String channel, String message);
+
+    void subscribe(String channel, Consumer<String> listener);
+}
@@ -0,0 +1,170 @@
+package exchange.cluster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import exchange.cache.RemoteCache;
+import exchange.core.OrderBook;
+import exchange.model.Tx;
+import exchange.service.BalanceLedger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Partitioned mode: every node knows the full node list and assigns books to nodes on a
+ * consistent hash ring keyed by book name. Owners publish their trades on the shared bus, and
+ * every other node replays them into a local replica book so it can serve the trade stream.
+ * Trades are handed to a single publisher thread in settlement order, so the bus sees all of them
+ * regardless of how the book's stream handles slow subscribers.
+ */
+@Component
+@Slf4j
+public class ClusterRouter {
+    static final String TRADE_CHANNEL = "exchange:trades";
+
+    @Value("${exchange.cluster.enabled:false}")
+    boolean enabled = false;
+
+    @Value("${exchange.cluster.self:}")
+    String self = "";
+
+    @Value("${exchange.cluster.nodes:}")
+    String nodes = "";
+
+    @Value("${exchange.cluster.virtual-nodes:128}")
+    int virtualNodes = 128;
+
+    @Value("${exchange.cluster.timeout-ms:5000}")
+    long timeoutMs = 5000L;
+
+    @Value("${exchange.cluster.secret:}")
+    String secret = "";
+
+    @Autowired
+    RemoteCache bus;
+
+    @Autowired
+    BalanceLedger ledger;
+
+    final ObjectMapper json = new ObjectMapper();
+    final Map<String, OrderBook> replicas = new ConcurrentHashMap<>();
+    HashRing ring;
+    List<String> members = List.of();
+    HttpClient client;
+    ExecutorService publisher;
+
+    record TradeMessage(String book, long seq, long time, long price, long volume) {
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        if (ledger.isEnabled()) {
+            throw new IllegalStateException("exchange.cluster.enabled cannot be combined with exchange.ledger.enabled: "
+                    + "each node would keep its own copy of every balance");
+        }
+        if (secret.isBlank()) {
+            throw new IllegalStateException("exchange.cluster.secret must be set so nodes can tell forwarded requests from client ones");
+        }
+        members = Arrays.stream(nodes.split(",")).map(String::trim).filter(node -> !node.isEmpty()).toList();
+        if (!members.contains(self)) {
+            throw new IllegalStateException("exchange.cluster.self " + self + " is not listed in exchange.cluster.nodes");
+        }
+        ring = new HashRing(members, virtualNodes);
+        client = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(timeoutMs)).build();
+        publisher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-trades");
+            thread.setDaemon(true);
+            return thread;
+        });
+        bus.subscribe(TRADE_CHANNEL, this::receive);
+        log.info("Cluster node {} of {}", self, members);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (publisher != null) {
+            publisher.shutdown();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getSelf() {
+        return self;
+    }
+
+    public List<String> getPeers() {
+        return members.stream().filter(node -> !node.equals(self)).toList();
+    }
+
+    public String owner(String bookName) {
+        return ring.owner(bookName);
+    }
+
+    public boolean isLocal(String bookName) {
+        return !enabled || self.equals(owner(bookName));
+    }
+
+    public String getSecret() {
+        return secret;
+    }
+
+    public boolean trusts(String presented) {
+        return presented != null && MessageDigest.isEqual(
+                presented.getBytes(StandardCharsets.UTF_8), secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public HttpClient getClient() {
+        return client;
+    }
+
+    public Duration getTimeout() {
+        return Duration.ofMillis(timeoutMs);
+    }
+
+    public void attach(OrderBook book) {
+        if (!enabled) return;
+        if (isLocal(book.getName())) {
+            book.setTradeListener(tx -> publisher.execute(() -> send(book.getName(), tx)));
+        } else {
+            replicas.put(book.getName(), book);
+        }
+    }
+
+    void send(String bookName, Tx tx) {
+        try {
+            bus.publish(TRADE_CHANNEL, json.writeValueAsString(new TradeMessage(bookName, tx.seq, tx.time, tx.price, tx.volume)));
+        } catch (JsonProcessingException | RuntimeException ex) {
+            log.warn("Could not publish trade of {}", bookName, ex);
+        }
+    }
+
+    void receive(String message) {
+        try {
+            TradeMessage trade = json.readValue(message, TradeMessage.class);
+            OrderBook replica = replicas.get(trade.book());
+            if (replica != null) {
+                replica.getSink().publish(new Tx(trade.seq(), trade.time(), trade.price(), trade.volume()));
+            }
+        } catch (JsonProcessingException ex) {
+            log.warn("Dropping malformed trade message {}", message, ex);
+        }
+    }
+}
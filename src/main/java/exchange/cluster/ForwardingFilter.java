@@ -0,0 +1,236 @@
+package exchange.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Sends book-scoped requests to the node that owns the book and streams the answer back, so
+ * clients can talk to any node. The trade stream is served locally from the trade bus, and
+ * POST /tick is also sent to every peer so that each node advances its own books. An order batch
+ * goes to the owner of its books; it must not span owners, since its reservation is all-or-nothing.
+ * Forwarded requests carry the cluster secret and are only trusted when it matches.
+ */
+@Component
+@Slf4j
+public class ForwardingFilter extends OncePerRequestFilter {
+    static final String FORWARDED_HEADER = "X-Exchange-Forwarded-By";
+    static final String SECRET_HEADER = "X-Exchange-Cluster-Secret";
+    static final List<String> COPIED_HEADERS = List.of("Content-Type", "Accept");
+    static final Pattern TRADE_STREAM = Pattern.compile("/book/[^/]+/[^/]+/stream");
+    static final Pattern ORDER_BATCH = Pattern.compile("/account/[^/]+/orders");
+
+    @Autowired
+    ClusterRouter router;
+
+    final ObjectMapper json = new ObjectMapper();
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !router.isEnabled();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (request.getHeader(FORWARDED_HEADER) != null) {
+            if (!router.trusts(request.getHeader(SECRET_HEADER))) {
+                response.sendError(HttpStatus.FORBIDDEN.value(), "Forwarded request without a valid cluster secret");
+                return;
+            }
+            chain.doFilter(request, response);
+            return;
+        }
+        String path = request.getRequestURI();
+        if (ORDER_BATCH.matcher(path).matches() && request.getMethod().equals("POST")) {
+            byte[] body = request.getInputStream().readAllBytes();
+            Set<String> owners = batchOwners(body);
+            if (owners.size() > 1) {
+                response.sendError(HttpStatus.CONFLICT.value(), "Batch spans books owned by " + owners + ", split it per owner");
+            } else if (owners.isEmpty() || owners.contains(router.getSelf())) {
+                chain.doFilter(new BufferedRequest(request, body), response);
+            } else {
+                forward(request, response, owners.iterator().next(), body);
+            }
+            return;
+        }
+        if (path.equals("/tick") && request.getMethod().equals("POST")) {
+            for (String peer : router.getPeers()) {
+                router.getClient().sendAsync(build(request, peer, new byte[0]), HttpResponse.BodyHandlers.discarding())
+                        .exceptionally(ex -> {
+                            log.warn("Tick of {} failed", peer, ex);
+                            return null;
+                        });
+            }
+            chain.doFilter(request, response);
+            return;
+        }
+        String book = bookOf(path, request.getQueryString());
+        if (book == null || TRADE_STREAM.matcher(path).matches() || router.isLocal(book)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        forward(request, response, router.owner(book), request.getInputStream().readAllBytes());
+    }
+
+    Set<String> batchOwners(byte[] body) {
+        Set<String> owners = new TreeSet<>();
+        try {
+            JsonNode orders = json.readTree(body);
+            if (orders == null) return owners;
+            for (JsonNode order : orders) {
+                JsonNode base = order.get("base");
+                JsonNode quote = order.get("quote");
+                if (base != null && base.isTextual() && quote != null && quote.isTextual()) {
+                    owners.add(router.owner(base.asText() + quote.asText()));
+                }
+            }
+        } catch (IOException ex) {
+            // malformed batches are rejected by the controller
+        }
+        return owners;
+    }
+
+    static String bookOf(String path, String query) {
+        String[] parts = path.split("/");
+        if (parts.length >= 4 && parts[1].equals("book")) {
+            return parts[2] + parts[3];
+        }
+        if (query == null) return null;
+        MultiValueMap<String, String> params = UriComponentsBuilder.newInstance().query(query).build().getQueryParams();
+        String base = params.getFirst("base");
+        String quote = params.getFirst("quote");
+        return base != null && quote != null ? base + quote : null;
+    }
+
+    HttpRequest build(HttpServletRequest request, String node, byte[] body) {
+        String query = request.getQueryString();
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(node + request.getRequestURI() + (query == null ? "" : "?" + query)))
+                .header(FORWARDED_HEADER, router.getSelf())
+                .header(SECRET_HEADER, router.getSecret())
+                .method(request.getMethod(), body.length == 0
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(body));
+        for (String header : COPIED_HEADERS) {
+            String value = request.getHeader(header);
+            if (value != null) builder.header(header, value);
+        }
+        // event streams stay open for as long as the client listens
+        if (!request.getRequestURI().endsWith("/stream")) {
+            builder.timeout(router.getTimeout());
+        }
+        return builder.build();
+    }
+
+    void forward(HttpServletRequest request, HttpServletResponse response, String owner, byte[] body) throws IOException {
+        HttpRequest upstream = build(request, owner, body);
+        HttpResponse<InputStream> answer;
+        try {
+            answer = router.getClient().send(upstream, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (HttpTimeoutException ex) {
+            log.warn("Forwarding {} to {} timed out", request.getRequestURI(), owner);
+            response.sendError(HttpStatus.GATEWAY_TIMEOUT.value(), "Owner " + owner + " did not answer in time");
+            return;
+        } catch (IOException ex) {
+            log.warn("Forwarding {} to {} failed", request.getRequestURI(), owner, ex);
+            response.sendError(HttpStatus.BAD_GATEWAY.value(), "Owner " + owner + " unreachable");
+            return;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+        response.setStatus(answer.statusCode());
+        answer.headers().firstValue("Content-Type").ifPresent(response::setContentType);
+        try (InputStream in = answer.body()) {
+            ServletOutputStream out = response.getOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+                // event streams must reach the client as they arrive
+                out.flush();
+            }
+        }
+    }
+
+    static final class BufferedRequest extends HttpServletRequestWrapper {
+        final byte[] body;
+
+        BufferedRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                // the whole body is already in memory, so it is available at once and in full
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    try {
+                        if (!isFinished()) listener.onDataAvailable();
+                        listener.onAllDataRead();
+                    } catch (IOException | RuntimeException ex) {
+                        listener.onError(ex);
+                    }
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return in.read(buffer, offset, length);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package exchange.constant;
+
+public enum CandleInterval {
+    S1("1s", 1_000L),
+    M1("1m", 60_000L),
+    H1("1h", 3_600_000L);
+
+    final String label;
+    final long millis;
+
+    CandleInterval(String label, long millis) {
+        this.label = label;
+        this.millis = millis;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    public static CandleInterval parse(String value) {
+        for (CandleInterval interval : values()) {
+            if (interval.label.equalsIgnoreCase(value) || interval.name().equalsIgnoreCase(value)) {
+                return interval;
+            }
+        }
+        throw new IllegalArgumentException("Unknown candle interval: " + value);
+    }
+}
@@ -0,0 +1,5 @@
+package exchange.constant;
+
+public enum MatchingMode {
+    TICK, CONTINUOUS
+}
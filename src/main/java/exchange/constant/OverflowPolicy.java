@@ -0,0 +1,7 @@
+package exchange.constant;
+
+public enum OverflowPolicy {
+    DROP_OLDEST,
+    CONFLATE,
+    DISCONNECT
+}
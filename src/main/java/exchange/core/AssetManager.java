@@ -1,21 +1,44 @@
 package exchange.core;
 
+import exchange.cluster.ClusterRouter;
+import exchange.constant.MatchingMode;
 import exchange.constant.OrderSide;
+import exchange.constant.OverflowPolicy;
+import exchange.exc.BookHalted;
+import exchange.exc.EngineBusy;
 import exchange.exc.InsufficientAssets;
+import exchange.exc.WrongNode;
 import exchange.model.Account;
 import exchange.model.Asset;
+import exchange.model.AssetDelta;
+import exchange.model.Fill;
 import exchange.model.Order;
 import exchange.service.AccountService;
+import exchange.service.AccountStore;
+import exchange.service.JpaAccountStore;
+import exchange.service.SettlementService;
+import exchange.strategy.StrategyScheduler;
+import exchange.vm.MarketContext;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 @Slf4j
@@ -27,12 +50,106 @@ public class AssetManager {
     @Autowired
     AccountService accountService;
 
+    @Autowired
+    MatchingEngine matchingEngine;
+
+    @Autowired
+    AccountStore accountStore;
+
+    @Autowired
+    MarketRecovery marketRecovery;
+
+    @Autowired
+    StrategyScheduler strategyScheduler;
+
+    @Autowired
+    ClusterRouter clusterRouter;
+
+    @Value("${exchange.matching.mode:TICK}")
+    MatchingMode defaultMatchingMode = MatchingMode.TICK;
+
+    @Value("${exchange.matching.parallelism:0}")
+    int matchingParallelism = 0;
+
+    @Value("${exchange.strategy.window-idle-ticks:100}")
+    long windowIdleTicks = 100L;
+
+    @Value("${exchange.settlement.max-retries:5}")
+    int maxSettleRetries = 5;
+
+    @Value("${exchange.stream.buffer-size:1024}")
+    int streamBufferSize = OrderBook.STREAM_CAPACITY;
+
+    @Value("${exchange.stream.overflow:DROP_OLDEST}")
+    OverflowPolicy streamOverflow = OverflowPolicy.DROP_OLDEST;
+
+    ExecutorService tickExecutor;
+    Scheduler tickScheduler;
+    Scheduler matchScheduler;
+    int matchWorkers = 1;
+    final Object settleLock = new Object();
+    SettlementBatch unsettled = new SettlementBatch();
+    int settleAttempts = 0;
+
     public AssetManager() {
 
     }
 
+    /**
+     * A private market outside the Spring context: its own books and clock, balances in the given
+     * account service, and no journal, matching engine or cluster. Call {@link #stop()} when done.
+     */
+    public static AssetManager offline(AccountService accounts, SettlementService settlement, MatchingMode mode,
+                                       StrategyScheduler strategies) {
+        AssetManager manager = new AssetManager();
+        manager.accountService = accounts;
+        manager.accountStore = new JpaAccountStore(accounts, settlement, Schedulers.immediate());
+        manager.matchingEngine = new MatchingEngine();
+        manager.marketRecovery = new MarketRecovery();
+        manager.clusterRouter = new ClusterRouter();
+        manager.strategyScheduler = strategies;
+        manager.defaultMatchingMode = mode;
+        manager.startTicks();
+        return manager;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        startTicks();
+        recover();
+        orderBooks.values().forEach(clusterRouter::attach);
+    }
+
+    public void recover() throws IOException {
+        marketRecovery.recover(this);
+    }
+
+    public void startTicks() {
+        matchWorkers = matchingParallelism > 0 ? matchingParallelism : Runtime.getRuntime().availableProcessors();
+        matchScheduler = Schedulers.newParallel("match", matchWorkers, true);
+        tickExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tick");
+            thread.setDaemon(true);
+            return thread;
+        });
+        tickScheduler = Schedulers.fromExecutorService(tickExecutor, "tick");
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (tickExecutor != null) {
+            tickScheduler.dispose();
+            matchScheduler.dispose();
+            tickExecutor.shutdown();
+        }
+    }
+
     public Mono<Account> getAccount(String name) {
-        return Mono.justOrEmpty(accountService.getAccountByName(name));
+        return accountStore.getAccount(name);
+    }
+
+    public Mono<Void> deposit(Account account, String asset, long volume) {
+        return accountStore.apply(account, asset, volume, 0L);
     }
 
     public Asset transferTo(Account account, String asset, long volume, String reason) {
@@ -53,67 +170,252 @@ public class AssetManager {
 
     public Mono<OrderBook> getOrderBook(String base, String quote) {
         String common = base + quote;
-        if (orderBooks.containsKey(common)) {
-            return Mono.just(orderBooks.get(common));
+        return Mono.just(orderBooks.computeIfAbsent(common, name -> {
+            OrderBook book = newOrderBook(base, quote, defaultMatchingMode);
+            marketRecovery.attach(book);
+            clusterRouter.attach(book);
+            return book;
+        }));
+    }
+
+    OrderBook newOrderBook(String base, String quote, MatchingMode mode) {
+        return new OrderBook(base, quote, base + quote, mode, streamBufferSize, streamOverflow);
+    }
+
+    public boolean isLocal(OrderBook orderBook) {
+        return clusterRouter.isLocal(orderBook.getName());
+    }
+
+    public String owner(OrderBook orderBook) {
+        return clusterRouter.owner(orderBook.getName());
+    }
+
+    public MarketContext marketContext(OrderBook orderBook, Account account) {
+        return new BookMarketContext(this, orderBook, account);
+    }
+
+    public MarketContext oneOffContext(OrderBook orderBook, Account account) {
+        return new BookMarketContext(this, orderBook, account, true);
+    }
+
+    public Mono<OrderBook> setMatchingMode(OrderBook orderBook, MatchingMode mode) {
+        orderBook.setMode(mode);
+        if (mode == MatchingMode.TICK) return Mono.just(orderBook);
+        return matchBook(orderBook, getTime())
+                .flatMap(fills -> settle(new SettlementBatch(orderBook, fills)))
+                .thenReturn(orderBook);
+    }
+
+    Mono<List<Fill>> submitOrder(OrderBook orderBook, Order order, OrderSide side) {
+        long timeNow = getTime();
+        if (matchingEngine.isEnabled()) {
+            return matchingEngine.place(orderBook, order, side, timeNow);
+        }
+        return Mono.fromSupplier(() -> orderBook.place(order, side, timeNow));
+    }
+
+    Mono<List<Fill>> matchBook(OrderBook orderBook, long timeNow) {
+        if (matchingEngine.isEnabled()) {
+            return matchingEngine.match(orderBook, timeNow);
+        }
+        return Mono.fromSupplier(() -> orderBook.match(timeNow));
+    }
+
+    /**
+     * Settles fills that are already applied to their books. A batch the store refuses is kept and
+     * retried ahead of the next tick's batch rather than dropped.
+     */
+    public Mono<Long> settle(SettlementBatch batch) {
+        if (batch.isEmpty()) return Mono.just(0L);
+        return commit(batch).onErrorResume(ex -> {
+            log.warn("Settlement of {} fills failed, retrying on the next tick", batch.size(), ex);
+            synchronized (settleLock) {
+                unsettled.add(batch);
+            }
+            return Mono.just(0L);
+        });
+    }
+
+    Mono<Long> commit(SettlementBatch batch) {
+        return Mono.defer(() -> accountStore.settle(batch.netTransfers()))
+                .then(Mono.fromCallable(() -> {
+                    batch.publish();
+                    accountStore.durable()
+                            .doOnSuccess(ignored -> batch.markSettled())
+                            .subscribe(null, ex -> log.error("Could not mark {} fills settled", batch.size(), ex));
+                    return (long) batch.size();
+                }));
+    }
+
+    SettlementBatch takeUnsettled() {
+        synchronized (settleLock) {
+            SettlementBatch taken = unsettled;
+            unsettled = new SettlementBatch();
+            return taken;
+        }
+    }
+
+    /**
+     * Settles a tick's batch, unsettled fills first. After too many failed attempts the batch is
+     * split per book: the books that still cannot settle are halted and everyone else moves on.
+     */
+    Long settleTick(SettlementBatch batch) {
+        if (batch.isEmpty()) return 0L;
+        try {
+            Long settled = commit(batch).block();
+            settleAttempts = 0;
+            return settled;
+        } catch (RuntimeException ex) {
+            if (++settleAttempts < maxSettleRetries) {
+                log.warn("Settlement of {} fills failed ({} of {} attempts)", batch.size(), settleAttempts, maxSettleRetries, ex);
+                synchronized (settleLock) {
+                    batch.add(unsettled);
+                    unsettled = batch;
+                }
+                return 0L;
+            }
+        }
+        settleAttempts = 0;
+        long settled = 0L;
+        for (Map.Entry<OrderBook, SettlementBatch> entry : batch.byBook().entrySet()) {
+            try {
+                settled += commit(entry.getValue()).block();
+            } catch (RuntimeException ex) {
+                log.error("Halting book {}: {} fills could not be settled", entry.getKey().getName(), entry.getValue().size(), ex);
+                entry.getKey().halt();
+            }
         }
-        OrderBook book = new OrderBook(base, quote, common);
-        orderBooks.put(common, book);
-        return Mono.just(book);
+        return settled;
     }
 
     public Mono<Order> placeOrder(OrderBook orderBook, Order order, OrderSide side) {
+        if (!clusterRouter.isLocal(orderBook.getName())) {
+            return Mono.error(new WrongNode(orderBook.getName(), clusterRouter.owner(orderBook.getName())));
+        }
+        if (orderBook.isHalted()) {
+            return Mono.error(new BookHalted(orderBook.getName()));
+        }
+        if (order.getPrice() <= 0L || order.getVolume() <= 0L) {
+            return Mono.error(new IllegalArgumentException("Price and volume must be positive, got " + order.getPrice() + " x " + order.getVolume()));
+        }
         String lockAsset = side == OrderSide.ASK ? orderBook.getLeft() : orderBook.getRight();
-        long lockVolume = side == OrderSide.ASK ? order.getVolume() : order.getVolume() * order.getPrice();
-        return hasEnough(
-                order.getAccount(),
-                lockAsset,
-                lockVolume
-        )
-                .zipWith(getOrderId())
-                .flatMap(result -> {
-                    boolean hasEnough = result.getT1();
-                    long nextId = result.getT2();
-                    if (!hasEnough) {
+        final long lockVolume;
+        try {
+            lockVolume = side == OrderSide.ASK ? order.getVolume() : Math.multiplyExact(order.getVolume(), order.getPrice());
+        } catch (ArithmeticException ex) {
+            return Mono.error(ex);
+        }
+        return accountStore.tryReserve(order.getAccount(), lockAsset, lockVolume)
+                .flatMap(reserved -> {
+                    if (!reserved) {
                         return Mono.error(new InsufficientAssets(lockAsset, lockVolume));
                     }
-                    Asset reserveOk = reserve(order.getAccount(), lockAsset, lockVolume);
-                    order.setId(nextId);
-                    return side == OrderSide.BID
-                            ? orderBook.placeBid(order)
-                            : orderBook.placeAsk(order);
+                    return getOrderId().flatMap(nextId -> {
+                        order.setId(nextId);
+                        return submitOrder(orderBook, order, side)
+                                .onErrorResume(EngineBusy.class, ex -> accountStore
+                                        .apply(order.getAccount(), lockAsset, 0L, -lockVolume)
+                                        .then(Mono.error(ex)))
+                                .flatMap(fills -> settle(new SettlementBatch(orderBook, fills)))
+                                .thenReturn(order);
+                    });
                 });
     }
 
-    @Transactional
-    public Mono<Boolean> transaction(Order bidPeek, Order askPeek, String left, String right, long price,
-                                     long transferVolume) {
-        askPeek.fill(transferVolume);
-        bidPeek.fill(transferVolume);
-        Account bidderAccount = bidPeek.getAccount();
-        Account askerAccount = askPeek.getAccount();
-        transferTo(bidderAccount, right, -price * transferVolume, "bid-right-rem");
-        reserve(bidderAccount, right, -price * transferVolume);
-        transferTo(bidderAccount, left, transferVolume, "bid-left-add");
+    /**
+     * Places a whole batch for the cost of about one order: the collateral is netted per account and
+     * asset and reserved all-or-nothing, the ids come from one contiguous range, and every book takes
+     * its share of the batch under a single lock before the fills are settled together.
+     */
+    public Mono<List<Order>> placeOrders(OrderBatch batch) {
+        if (batch.isEmpty()) return Mono.just(List.of());
+        for (OrderBook book : batch.slices.keySet()) {
+            if (!clusterRouter.isLocal(book.getName())) {
+                return Mono.error(new WrongNode(book.getName(), clusterRouter.owner(book.getName())));
+            }
+            if (book.isHalted()) {
+                return Mono.error(new BookHalted(book.getName()));
+            }
+        }
+        return accountStore.reserveAll(batch.reservations())
+                .flatMap(shortfall -> Mono.<List<Order>>error(new InsufficientAssets(shortfall.assetId, shortfall.reserved)))
+                .switchIfEmpty(Mono.defer(() -> {
+                    batch.assignIds(orderIdCounter.getAndAdd(batch.size()));
+                    long timeNow = getTime();
+                    // a book whose shard is full gives its collateral back; the other books keep their orders
+                    // and their fills are settled before the refusal is reported
+                    AtomicReference<EngineBusy> refused = new AtomicReference<>();
+                    return Flux.fromIterable(batch.slices.entrySet())
+                            .flatMap(entry -> submitOrders(entry.getKey(), entry.getValue(), timeNow)
+                                    .map(fills -> new SettlementBatch(entry.getKey(), fills))
+                                    .onErrorResume(EngineBusy.class, ex -> {
+                                        refused.set(ex);
+                                        return release(batch.reservations(List.of(entry.getKey())))
+                                                .thenReturn(new SettlementBatch());
+                                    }))
+                            .reduceWith(SettlementBatch::new, (result, bookBatch) -> {
+                                result.add(bookBatch);
+                                return result;
+                            })
+                            .flatMap(this::settle)
+                            .then(Mono.defer(() -> refused.get() == null
+                                    ? Mono.just(batch.getOrders())
+                                    : Mono.error(refused.get())));
+                }));
+    }
+
+    Mono<Void> release(List<AssetDelta> reservations) {
+        List<AssetDelta> releases = new ArrayList<>(reservations.size());
+        for (AssetDelta reservation : reservations) {
+            AssetDelta release = new AssetDelta(reservation.accountId, reservation.assetId);
+            release.reserved = -reservation.reserved;
+            releases.add(release);
+        }
+        return accountStore.settle(releases);
+    }
 
-        transferTo(askerAccount, right, price * transferVolume, "ask-right-add");
-        transferTo(askerAccount, left, -transferVolume, "ask-left-rem");
-        reserve(askerAccount, left, -transferVolume);
-        return Mono.just(true);
+    Mono<List<Fill>> submitOrders(OrderBook orderBook, OrderBatch.Slice slice, long timeNow) {
+        if (matchingEngine.isEnabled()) {
+            return matchingEngine.placeAll(orderBook, slice.orders, slice.sides, timeNow);
+        }
+        return Mono.fromSupplier(() -> orderBook.placeAll(slice.orders, slice.sides, timeNow));
     }
 
     public Long getTime() {
         return System.currentTimeMillis();
     }
 
+    /**
+     * Runs one tick on the single tick thread, so ticks never interleave. Strategies run first, then
+     * every dirty book is matched on the bounded match pool; all of them are joined into one netted
+     * settlement batch before the clock moves on, which keeps balances right for accounts trading in
+     * several books within the same tick.
+     */
     public Mono<Long> advance() {
+        return Mono.fromCallable(this::tick).subscribeOn(tickScheduler);
+    }
+
+    Long tick() {
         final long timeNow = getTime();
-        return Flux.fromIterable(orderBooks.entrySet())
-                .flatMap(ob -> ob.getValue().matchMultiple(this, timeNow))
-                .reduce(Long::sum)
-                .flatMap(result -> {
-                    time.incrementAndGet();
-                    return Mono.just(result);
-                });
+        strategyScheduler.runAll(this).block();
+        SettlementBatch batch = takeUnsettled();
+        SettlementBatch matched = Flux.fromIterable(orderBooks.values())
+                .filter(ob -> ob.isDirty() && !ob.isHalted())
+                .flatMap(ob -> matchBook(ob, timeNow)
+                        .subscribeOn(matchScheduler)
+                        // a book whose shard is full stays dirty and is matched on a later tick
+                        .onErrorResume(EngineBusy.class, ex -> Mono.just(List.of()))
+                        .map(fills -> new SettlementBatch(ob, fills)), matchWorkers)
+                .reduceWith(SettlementBatch::new, (result, bookBatch) -> {
+                    result.add(bookBatch);
+                    return result;
+                })
+                .block();
+        batch.add(matched);
+        Long settled = settleTick(batch);
+        orderBooks.values().forEach(book -> book.evictWindows(windowIdleTicks));
+        time.incrementAndGet();
+        return settled;
     }
 
     public Flux<OrderBook> getOrderBooks() {
@@ -123,4 +425,8 @@ public class AssetManager {
     public Map<String, Long> getPublicAssets(Account account) {
         return accountService.getPublicAssets(account);
     }
+
+    public Mono<Map<String, Long>> fetchPublicAssets(Account account) {
+        return accountStore.getPublicAssets(account);
+    }
 }
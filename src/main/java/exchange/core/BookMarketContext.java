@@ -0,0 +1,92 @@
+package exchange.core;
+
+import exchange.constant.OrderSide;
+import exchange.exc.SEException;
+import exchange.model.Account;
+import exchange.model.Order;
+import exchange.vm.MarketContext;
+import reactor.core.Exceptions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class BookMarketContext implements MarketContext {
+    final AssetManager assetManager;
+    final OrderBook book;
+    final Account account;
+    final Map<Integer, RollingWindow> scratch;
+
+    public BookMarketContext(AssetManager assetManager, OrderBook book, Account account) {
+        this(assetManager, book, account, false);
+    }
+
+    /**
+     * A one-off context reads windows without making the book track them; the copies it builds
+     * live only as long as the context.
+     */
+    public BookMarketContext(AssetManager assetManager, OrderBook book, Account account, boolean oneOff) {
+        this.assetManager = assetManager;
+        this.book = book;
+        this.account = account;
+        this.scratch = oneOff ? new HashMap<>() : null;
+    }
+
+    RollingWindow windowOf(int size) {
+        if (scratch == null) return book.getWindow(size);
+        return scratch.computeIfAbsent(OrderBook.windowCapacity(size), book::peekWindow);
+    }
+
+    @Override
+    public long read(int back) {
+        TradeHistory trades = book.getTrades();
+        long size = trades.size();
+        if (back < 0 || back >= size) return 0L;
+        return trades.getPrice(size - 1 - back);
+    }
+
+    @Override
+    public boolean buy(long price, long volume) {
+        return place(price, volume, OrderSide.BID);
+    }
+
+    @Override
+    public boolean sell(long price, long volume) {
+        return place(price, volume, OrderSide.ASK);
+    }
+
+    boolean place(long price, long volume, OrderSide side) {
+        if (account == null || price <= 0 || volume <= 0) return false;
+        try {
+            assetManager.placeOrder(book, new Order(price, volume, account), side).block();
+            return true;
+        } catch (RuntimeException ex) {
+            if (Exceptions.unwrap(ex) instanceof SEException) return false;
+            throw ex;
+        }
+    }
+
+    @Override
+    public long mean(int window) {
+        return windowOf(window).mean();
+    }
+
+    @Override
+    public long median(int window) {
+        return windowOf(window).median();
+    }
+
+    @Override
+    public long std(int window) {
+        return windowOf(window).std();
+    }
+
+    @Override
+    public long min(int window) {
+        return windowOf(window).min();
+    }
+
+    @Override
+    public long max(int window) {
+        return windowOf(window).max();
+    }
+}
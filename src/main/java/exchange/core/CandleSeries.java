@@ -0,0 +1,91 @@
+package exchange.core;
+
+import exchange.constant.CandleInterval;
+import exchange.view.CandleView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CandleSeries {
+    final CandleInterval interval;
+    final int capacity;
+    final long[] start;
+    final long[] open;
+    final long[] high;
+    final long[] low;
+    final long[] close;
+    final long[] volume;
+    final long[] trades;
+    long count = 0L;
+
+    public CandleSeries(CandleInterval interval, int capacity) {
+        this.interval = interval;
+        this.capacity = capacity;
+        start = new long[capacity];
+        open = new long[capacity];
+        high = new long[capacity];
+        low = new long[capacity];
+        close = new long[capacity];
+        volume = new long[capacity];
+        trades = new long[capacity];
+    }
+
+    public synchronized CandleView update(long time, long price, long tradeVolume) {
+        long bucket = time - Math.floorMod(time, interval.getMillis());
+        int i = (int) ((count - 1) % capacity);
+        if (count == 0L || bucket > start[i]) {
+            i = (int) (count % capacity);
+            count++;
+            start[i] = bucket;
+            open[i] = price;
+            high[i] = price;
+            low[i] = price;
+            close[i] = price;
+            volume[i] = tradeVolume;
+            trades[i] = 1L;
+        } else {
+            high[i] = Math.max(high[i], price);
+            low[i] = Math.min(low[i], price);
+            close[i] = price;
+            volume[i] += tradeVolume;
+            trades[i]++;
+        }
+        return view(i);
+    }
+
+    public synchronized List<CandleView> latest(int limit) {
+        long available = Math.min(count, capacity);
+        long first = count - Math.min(available, Math.max(0, limit));
+        return read(first, count);
+    }
+
+    public synchronized List<CandleView> since(long time, int limit) {
+        long low = Math.max(0L, count - capacity);
+        long high = count;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (start[(int) (mid % capacity)] + interval.getMillis() <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return read(low, Math.min(count, low + Math.max(0, limit)));
+    }
+
+    private List<CandleView> read(long first, long end) {
+        List<CandleView> result = new ArrayList<>((int) (end - first));
+        for (long n = first; n < end; n++) {
+            result.add(view((int) (n % capacity)));
+        }
+        return result;
+    }
+
+    private CandleView view(int i) {
+        return new CandleView(interval.getLabel(), start[i], open[i], high[i], low[i], close[i], volume[i], trades[i]);
+    }
+
+    public CandleInterval getInterval() {
+        return interval;
+    }
+}
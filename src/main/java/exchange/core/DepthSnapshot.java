@@ -0,0 +1,127 @@
+package exchange.core;
+
+import exchange.model.Order;
+import exchange.model.Tx;
+
+import java.util.List;
+
+public final class DepthSnapshot {
+    static final DepthSnapshot EMPTY = new DepthSnapshot(-1L, 0L, new long[0], new long[0], new long[0], new long[0],
+            null, null, 0L, List.of());
+
+    final long version;
+    final long sequence;
+    final long[] bidPrices;
+    final long[] bidVolumes;
+    final long[] askPrices;
+    final long[] askVolumes;
+    final long[] topBid;
+    final long[] topAsk;
+    final long lastPrice;
+    final List<Tx> history;
+
+    DepthSnapshot(long version, long sequence, long[] bidPrices, long[] bidVolumes, long[] askPrices, long[] askVolumes,
+                  long[] topBid, long[] topAsk, long lastPrice, List<Tx> history) {
+        this.version = version;
+        this.sequence = sequence;
+        this.bidPrices = bidPrices;
+        this.bidVolumes = bidVolumes;
+        this.askPrices = askPrices;
+        this.askVolumes = askVolumes;
+        this.topBid = topBid;
+        this.topAsk = topAsk;
+        this.lastPrice = lastPrice;
+        this.history = history;
+    }
+
+    static DepthSnapshot of(long version, long sequence, OrderLadder bid, OrderLadder ask, long lastPrice, List<Tx> history) {
+        long[] bidPrices = new long[bid.getLevelCount()];
+        long[] bidVolumes = new long[bidPrices.length];
+        long[] askPrices = new long[ask.getLevelCount()];
+        long[] askVolumes = new long[askPrices.length];
+        fill(bid, bidPrices, bidVolumes);
+        fill(ask, askPrices, askVolumes);
+        return new DepthSnapshot(version, sequence, bidPrices, bidVolumes, askPrices, askVolumes,
+                top(bid), top(ask), lastPrice, List.copyOf(history));
+    }
+
+    private static void fill(OrderLadder ladder, long[] prices, long[] volumes) {
+        int i = 0;
+        for (PriceLevel level : ladder.levels.values()) {
+            prices[i] = level.price;
+            volumes[i] = level.volume;
+            i++;
+        }
+    }
+
+    private static long[] top(OrderLadder ladder) {
+        PriceLevel level = ladder.best();
+        if (level == null) return null;
+        Order order = level.peek();
+        return new long[]{order.getPrice(), order.getRealVolume()};
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getBidLevels() {
+        return bidPrices.length;
+    }
+
+    public int getAskLevels() {
+        return askPrices.length;
+    }
+
+    public long getBidPrice(int level) {
+        return bidPrices[level];
+    }
+
+    public long getBidVolume(int level) {
+        return bidVolumes[level];
+    }
+
+    public long getAskPrice(int level) {
+        return askPrices[level];
+    }
+
+    public long getAskVolume(int level) {
+        return askVolumes[level];
+    }
+
+    public boolean hasTopBid() {
+        return topBid != null;
+    }
+
+    public boolean hasTopAsk() {
+        return topAsk != null;
+    }
+
+    public long getTopBidPrice() {
+        return topBid[0];
+    }
+
+    public long getTopBidVolume() {
+        return topBid[1];
+    }
+
+    public long getTopAskPrice() {
+        return topAsk[0];
+    }
+
+    public long getTopAskVolume() {
+        return topAsk[1];
+    }
+
+    public long getLastPrice() {
+        return lastPrice;
+    }
+
+    public List<Tx> getHistory() {
+        return history;
+    }
+}
@@ -0,0 +1,435 @@
+package exchange.core;
+
+import exchange.constant.MatchingMode;
+import exchange.constant.OrderSide;
+import exchange.journal.Journal;
+import exchange.journal.JournalHandler;
+import exchange.model.Account;
+import exchange.model.Fill;
+import exchange.model.Order;
+import exchange.service.AccountService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Rebuilds order books from the latest snapshot plus the journal written after it.
+ * Each book journals its own events while holding its monitor, and its snapshot records the
+ * journal position taken under the same monitor, so replay applies exactly the events the
+ * snapshot has not seen yet. Books are registered here in the same step that journals their
+ * BOOK record, so a snapshot either includes a book or starts before its BOOK record.
+ * Fills are journaled before their balance transfers are settled; fills left without a SETTLE
+ * record are settled again on startup, and the node refuses to start if that fails.
+ * Trade history lives in one append-only file per book that each snapshot only extends, so a
+ * snapshot stays the size of the resting orders however many trades a book has made.
+ */
+@Component
+@Slf4j
+public class MarketRecovery {
+    static final long SNAPSHOT_MAGIC = 0x53454D4B54534E50L;
+    static final int SNAPSHOT_VERSION = 3;
+    static final String SNAPSHOT_PREFIX = "snapshot-";
+    static final String SNAPSHOT_SUFFIX = ".bin";
+    static final String TRADES_PREFIX = "trades-";
+    static final int TRADE_BYTES = 3 * Long.BYTES;
+
+    @Value("${exchange.journal.enabled:false}")
+    boolean enabled = false;
+
+    @Value("${exchange.journal.dir:journal}")
+    String directory = "journal";
+
+    @Value("${exchange.journal.segment-size:67108864}")
+    int segmentSize = 64 << 20;
+
+    @Value("${exchange.journal.snapshot-interval-ms:60000}")
+    long snapshotIntervalMs = 60_000L;
+
+    @Autowired
+    AccountService accountService;
+
+    Journal journal;
+    final AtomicInteger bookIds = new AtomicInteger(0);
+    final Map<Integer, OrderBook> books = new HashMap<>();
+    final Map<Integer, Long> tradesWritten = new HashMap<>();
+    ScheduledExecutorService snapshotter;
+    long lastSnapshotPosition = -1L;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    void recover(AssetManager manager) throws IOException {
+        if (!enabled) return;
+        Path root = Path.of(directory);
+        journal = new Journal(root, segmentSize);
+        long started = System.currentTimeMillis();
+        Replay replay = new Replay(manager);
+        Path snapshot = latestSnapshot(root);
+        long from = 0L;
+        if (snapshot != null) {
+            from = replay.load(snapshot);
+            lastSnapshotPosition = from;
+        }
+        long records = journal.read(from, replay);
+        bookIds.set(replay.nextBookId);
+        manager.orderIdCounter.accumulateAndGet(replay.nextOrderId, Math::max);
+        for (OrderBook book : manager.orderBooks.values()) {
+            book.journal = journal;
+        }
+        resettle(manager);
+        log.info("Recovered {} books and {} resting orders from {} and {} journal records in {} ms",
+                manager.orderBooks.size(), replay.orders.size(), snapshot == null ? "no snapshot" : snapshot.getFileName(),
+                records, System.currentTimeMillis() - started);
+
+        snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(() -> snapshotQuietly(manager),
+                snapshotIntervalMs, snapshotIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Settles the replayed fills that never got their SETTLE record: the node stopped between
+     * matching and settlement, or the balances were held by a write-behind ledger that had not
+     * flushed them yet.
+     */
+    void resettle(AssetManager manager) throws IOException {
+        SettlementBatch batch = new SettlementBatch();
+        for (OrderBook book : books.values()) {
+            batch.add(book, book.getUnsettled());
+        }
+        if (batch.isEmpty()) return;
+        try {
+            manager.accountStore.settle(batch.netTransfers()).then(manager.accountStore.durable()).block();
+        } catch (RuntimeException ex) {
+            throw new IOException("Journal holds " + batch.size() + " unsettled fills the balances refused, not starting", ex);
+        }
+        batch.markSettled();
+        log.warn("Settled {} journaled fills that had no settlement record", batch.size());
+    }
+
+    void attach(OrderBook book) {
+        if (journal == null) return;
+        synchronized (books) {
+            synchronized (book.sync) {
+                book.bookId = bookIds.getAndIncrement();
+                journal.book(book.bookId, book.getLeft(), book.getRight(), book.getMode());
+                book.journal = journal;
+            }
+            books.put(book.bookId, book);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (snapshotter != null) {
+            snapshotter.shutdown();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    void snapshotQuietly(AssetManager manager) {
+        try {
+            if (journal.position() != lastSnapshotPosition) snapshot(manager);
+        } catch (IOException | RuntimeException ex) {
+            log.error("Journal snapshot failed", ex);
+        }
+    }
+
+    synchronized void snapshot(AssetManager manager) throws IOException {
+        Path root = Path.of(directory);
+        long start;
+        List<OrderBook> books;
+        synchronized (this.books) {
+            start = journal.position();
+            books = this.books.values().stream()
+                    .sorted(Comparator.comparingInt(book -> book.bookId))
+                    .toList();
+        }
+        long nextOrderId = manager.orderIdCounter.get();
+        Path target = root.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, start, SNAPSHOT_SUFFIX));
+        Path temporary = root.resolve(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeLong(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(start);
+            out.writeLong(nextOrderId);
+            out.writeInt(bookIds.get());
+            out.writeInt(books.size());
+            for (OrderBook book : books) {
+                out.write(encode(book));
+            }
+        }
+        journal.force();
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        lastSnapshotPosition = start;
+        journal.truncateBefore(start);
+        try (Stream<Path> files = Files.list(root)) {
+            for (Path old : files.filter(path -> isSnapshot(path) && !path.equals(target)).toList()) {
+                Files.deleteIfExists(old);
+            }
+        }
+        log.info("Wrote snapshot of {} books at journal position {}", books.size(), start);
+    }
+
+    byte[] encode(OrderBook book) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        long count;
+        synchronized (book.sync) {
+            out.writeInt(book.bookId);
+            out.writeUTF(book.getLeft());
+            out.writeUTF(book.getRight());
+            out.writeByte(book.getMode().ordinal());
+            out.writeLong(book.journal.position());
+            out.writeLong(book.getLastPrice());
+            out.writeInt(book.bid.getOrderCount() + book.ask.getOrderCount());
+            for (OrderLadder ladder : List.of(book.bid, book.ask)) {
+                for (PriceLevel level : ladder.levels.values()) {
+                    for (Order order : level.orders) {
+                        out.writeByte(ladder.side.ordinal());
+                        out.writeLong(order.getId());
+                        out.writeLong(order.getPrice());
+                        out.writeLong(order.getVolume());
+                        out.writeLong(order.getFilled());
+                        out.writeLong(order.getPriority());
+                        out.writeUTF(order.getAccount().getId());
+                    }
+                }
+            }
+            out.writeInt(book.unsettled.size());
+            for (Fill fill : book.unsettled.values()) {
+                out.writeLong(fill.seq);
+                out.writeLong(fill.time);
+                out.writeLong(fill.price);
+                out.writeLong(fill.volume);
+                out.writeLong(fill.bid.getPrice());
+                out.writeUTF(fill.bid.getAccount().getId());
+                out.writeUTF(fill.ask.getAccount().getId());
+            }
+            count = book.getTrades().size();
+        }
+        // the history is append-only and readable without the lock, so matching goes on while it is written
+        appendTrades(book, count);
+        out.writeLong(count);
+        return bytes.toByteArray();
+    }
+
+    Path tradesPath(int bookId) {
+        return Path.of(directory).resolve(String.format("%s%010d%s", TRADES_PREFIX, bookId, SNAPSHOT_SUFFIX));
+    }
+
+    /**
+     * Writes the trades made since the last snapshot to the book's trade file and forces them to
+     * disk before the snapshot that counts them is published.
+     */
+    void appendTrades(OrderBook book, long count) throws IOException {
+        long from = tradesWritten.getOrDefault(book.bookId, 0L);
+        if (from >= count) return;
+        TradeHistory trades = book.getTrades();
+        try (FileChannel channel = FileChannel.open(tradesPath(book.bookId), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.position(from * TRADE_BYTES);
+            ByteBuffer buffer = ByteBuffer.allocate(TRADE_BYTES * 4096);
+            for (long seq = from; seq < count; seq++) {
+                if (!buffer.hasRemaining()) drain(buffer, channel);
+                buffer.putLong(trades.getTime(seq)).putLong(trades.getPrice(seq)).putLong(trades.getVolume(seq));
+            }
+            drain(buffer, channel);
+            channel.force(false);
+        }
+        tradesWritten.put(book.bookId, count);
+    }
+
+    static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Reads back the trades a snapshot counted, cutting off anything a later snapshot wrote before
+     * it could be published.
+     */
+    void loadTrades(OrderBook book, long count) throws IOException {
+        tradesWritten.put(book.bookId, count);
+        if (count == 0L) return;
+        Path path = tradesPath(book.bookId);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            if (channel.size() < count * TRADE_BYTES) {
+                throw new IOException(path + " holds fewer than the " + count + " trades of its snapshot");
+            }
+            channel.truncate(count * TRADE_BYTES);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            for (long t = 0; t < count; t++) {
+                long time = in.readLong();
+                long price = in.readLong();
+                long volume = in.readLong();
+                book.trades.append(time, price, volume);
+                for (CandleSeries series : book.candles.values()) {
+                    series.update(time, price, volume);
+                }
+            }
+        }
+    }
+
+    static boolean isSnapshot(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+    }
+
+    static Path latestSnapshot(Path root) throws IOException {
+        try (Stream<Path> files = Files.list(root)) {
+            return files.filter(MarketRecovery::isSnapshot).max(Comparator.naturalOrder()).orElse(null);
+        }
+    }
+
+    final class Replay implements JournalHandler {
+        final AssetManager manager;
+        final Map<Integer, OrderBook> books = new HashMap<>();
+        final Map<Integer, Long> snapshotPositions = new HashMap<>();
+        final Map<Long, Order> orders = new HashMap<>();
+        final Map<String, Account> accounts = new HashMap<>();
+        int nextBookId = 0;
+        long nextOrderId = 0L;
+
+        Replay(AssetManager manager) {
+            this.manager = manager;
+        }
+
+        long load(Path snapshot) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+                if (in.readLong() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                    throw new IOException("Unsupported snapshot " + snapshot);
+                }
+                long start = in.readLong();
+                nextOrderId = in.readLong();
+                nextBookId = in.readInt();
+                int bookCount = in.readInt();
+                for (int b = 0; b < bookCount; b++) {
+                    int bookId = in.readInt();
+                    OrderBook book = createBook(bookId, in.readUTF(), in.readUTF(), MatchingMode.values()[in.readByte()]);
+                    snapshotPositions.put(bookId, in.readLong());
+                    book.lastPrice.set(in.readLong());
+                    int orderCount = in.readInt();
+                    for (int o = 0; o < orderCount; o++) {
+                        OrderSide side = OrderSide.values()[in.readByte()];
+                        long id = in.readLong();
+                        long price = in.readLong();
+                        long volume = in.readLong();
+                        long filled = in.readLong();
+                        long priority = in.readLong();
+                        Order order = newOrder(id, price, volume, in.readUTF());
+                        order.setFilled(filled);
+                        order.setPriority(priority);
+                        book.restore(order, side);
+                    }
+                    int unsettledCount = in.readInt();
+                    for (int f = 0; f < unsettledCount; f++) {
+                        long seq = in.readLong();
+                        long time = in.readLong();
+                        long price = in.readLong();
+                        long volume = in.readLong();
+                        long bidPrice = in.readLong();
+                        Order bid = new Order(bidPrice, volume, account(in.readUTF()));
+                        Order ask = new Order(price, volume, account(in.readUTF()));
+                        Fill fill = new Fill(bid, ask, price, volume);
+                        fill.seq = seq;
+                        fill.time = time;
+                        book.unsettled.put(seq, fill);
+                    }
+                    loadTrades(book, in.readLong());
+                }
+                return start;
+            }
+        }
+
+        OrderBook createBook(int bookId, String base, String quote, MatchingMode mode) {
+            OrderBook book = manager.newOrderBook(base, quote, mode);
+            book.bookId = bookId;
+            books.put(bookId, book);
+            MarketRecovery.this.books.put(bookId, book);
+            manager.orderBooks.put(book.getName(), book);
+            nextBookId = Math.max(nextBookId, bookId + 1);
+            return book;
+        }
+
+        Account account(String accountId) {
+            return accounts.computeIfAbsent(accountId, name -> accountService.getAccountByName(name).orElseThrow());
+        }
+
+        Order newOrder(long id, long price, long volume, String accountId) {
+            Order order = new Order(price, volume, account(accountId));
+            order.setId(id);
+            orders.put(id, order);
+            nextOrderId = Math.max(nextOrderId, id + 1);
+            return order;
+        }
+
+        boolean seen(long position, int bookId) {
+            Long snapshotPosition = snapshotPositions.get(bookId);
+            return snapshotPosition != null && position < snapshotPosition;
+        }
+
+        @Override
+        public void book(long position, int bookId, String base, String quote, MatchingMode mode) {
+            if (books.containsKey(bookId)) return;
+            createBook(bookId, base, quote, mode);
+        }
+
+        @Override
+        public void order(long position, int bookId, long orderId, OrderSide side, long price, long volume,
+                          String account) {
+            if (seen(position, bookId)) return;
+            books.get(bookId).restore(newOrder(orderId, price, volume, account), side);
+        }
+
+        @Override
+        public void fill(long position, int bookId, long bidId, long askId, long price, long volume, long time) {
+            if (seen(position, bookId)) return;
+            Order bid = orders.get(bidId);
+            Order ask = orders.get(askId);
+            books.get(bookId).apply(bid, ask, price, volume, time);
+            if (bid.getRealVolume() == 0L) orders.remove(bidId);
+            if (ask.getRealVolume() == 0L) orders.remove(askId);
+        }
+
+        @Override
+        public void mode(long position, int bookId, MatchingMode mode) {
+            if (seen(position, bookId)) return;
+            books.get(bookId).mode = mode;
+        }
+
+        @Override
+        public void settle(long position, int bookId, long[] seqs) {
+            if (seen(position, bookId)) return;
+            OrderBook book = books.get(bookId);
+            for (long seq : seqs) {
+                book.unsettled.remove(seq);
+            }
+        }
+    }
+}
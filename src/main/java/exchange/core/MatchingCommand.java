@@ -0,0 +1,42 @@
+package exchange.core;
+
+import exchange.constant.OrderSide;
+import exchange.model.Fill;
+import exchange.model.Order;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+final class MatchingCommand {
+    enum Type {
+        PLACE, PLACE_ALL, MATCH
+    }
+
+    Type type;
+    OrderBook book;
+    Order order;
+    OrderSide side;
+    List<Order> orders;
+    List<OrderSide> sides;
+    long time;
+    CompletableFuture<List<Fill>> result;
+
+    void set(Type type, OrderBook book, Order order, OrderSide side, long time, CompletableFuture<List<Fill>> result) {
+        this.type = type;
+        this.book = book;
+        this.order = order;
+        this.side = side;
+        this.time = time;
+        this.result = result;
+    }
+
+    void clear() {
+        type = null;
+        book = null;
+        order = null;
+        side = null;
+        orders = null;
+        sides = null;
+        result = null;
+    }
+}
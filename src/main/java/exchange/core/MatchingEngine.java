@@ -0,0 +1,82 @@
+package exchange.core;
+
+import exchange.constant.OrderSide;
+import exchange.model.Fill;
+import exchange.model.Order;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@Component
+@Slf4j
+public class MatchingEngine {
+    @Value("${exchange.engine.enabled:false}")
+    boolean enabled = false;
+
+    @Value("${exchange.engine.shards:0}")
+    int shardCount = 0;
+
+    @Value("${exchange.engine.ring-size:65536}")
+    int ringSize = 65536;
+
+    MatchingShard[] shards = new MatchingShard[0];
+    Scheduler completions = Schedulers.boundedElastic();
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+        shards = new MatchingShard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new MatchingShard(i, ringSize);
+            shards[i].start();
+        }
+        log.info("Matching engine started with {} shards, ring size {}", count, ringSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (MatchingShard shard : shards) {
+            shard.stop();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled && shards.length > 0;
+    }
+
+    MatchingShard shardOf(OrderBook book) {
+        return shards[Math.floorMod(book.getName().hashCode(), shards.length)];
+    }
+
+    public Mono<List<Fill>> place(OrderBook book, Order order, OrderSide side, long time) {
+        return submit(MatchingCommand.Type.PLACE, book, order, side, time);
+    }
+
+    public Mono<List<Fill>> placeAll(OrderBook book, List<Order> orders, List<OrderSide> sides, long time) {
+        return Mono.defer(() -> Mono.fromFuture(shardOf(book).submitAll(book, orders, sides, time)).publishOn(completions));
+    }
+
+    public Mono<List<Fill>> match(OrderBook book, long time) {
+        return submit(MatchingCommand.Type.MATCH, book, null, null, time);
+    }
+
+    Mono<List<Fill>> submit(MatchingCommand.Type type, OrderBook book, Order order, OrderSide side, long time) {
+        return Mono.defer(() -> {
+            CompletableFuture<List<Fill>> result = shardOf(book).submit(type, book, order, side, time);
+            return Mono.fromFuture(result).publishOn(completions);
+        });
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+}
@@ -0,0 +1,119 @@
+package exchange.core;
+
+import exchange.constant.OrderSide;
+import exchange.engine.RingBuffer;
+import exchange.exc.EngineBusy;
+import exchange.model.Fill;
+import exchange.model.Order;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+@Slf4j
+class MatchingShard implements Runnable {
+    static final int MAX_BATCH = 256;
+    static final int SPIN_TRIES = 100;
+    static final int YIELD_TRIES = 200;
+    static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    final int id;
+    final RingBuffer<MatchingCommand> ring;
+    final Thread thread;
+    volatile boolean running = true;
+    volatile boolean sleeping = false;
+
+    MatchingShard(int id, int ringSize) {
+        this.id = id;
+        this.ring = new RingBuffer<>(ringSize, MatchingCommand::new);
+        this.thread = new Thread(this, "matching-" + id);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Hands a command to the shard thread without ever waiting: a full ring fails the returned future
+     * with {@link EngineBusy}, so the caller's thread is never parked behind a slow shard.
+     */
+    CompletableFuture<List<Fill>> submit(MatchingCommand.Type type, OrderBook book, Order order, OrderSide side,
+                                         long time) {
+        long sequence = ring.tryNext();
+        if (sequence < 0L) return CompletableFuture.failedFuture(new EngineBusy(id));
+        CompletableFuture<List<Fill>> result = new CompletableFuture<>();
+        ring.get(sequence).set(type, book, order, side, time, result);
+        ring.publish(sequence);
+        if (sleeping) LockSupport.unpark(thread);
+        return result;
+    }
+
+    CompletableFuture<List<Fill>> submitAll(OrderBook book, List<Order> orders, List<OrderSide> sides, long time) {
+        long sequence = ring.tryNext();
+        if (sequence < 0L) return CompletableFuture.failedFuture(new EngineBusy(id));
+        CompletableFuture<List<Fill>> result = new CompletableFuture<>();
+        MatchingCommand command = ring.get(sequence);
+        command.set(MatchingCommand.Type.PLACE_ALL, book, null, null, time, result);
+        command.orders = orders;
+        command.sides = sides;
+        ring.publish(sequence);
+        if (sleeping) LockSupport.unpark(thread);
+        return result;
+    }
+
+    @Override
+    public void run() {
+        int idle = 0;
+        while (running) {
+            int drained = ring.drain(this::execute, MAX_BATCH);
+            if (drained > 0) {
+                idle = 0;
+            } else {
+                idle(++idle);
+            }
+        }
+        ring.drain(this::execute, ring.getCapacity());
+    }
+
+    void execute(MatchingCommand command) {
+        CompletableFuture<List<Fill>> result = command.result;
+        try {
+            List<Fill> fills = switch (command.type) {
+                case PLACE -> command.book.place(command.order, command.side, command.time);
+                case PLACE_ALL -> command.book.placeAll(command.orders, command.sides, command.time);
+                case MATCH -> command.book.match(command.time);
+            };
+            result.complete(fills);
+        } catch (Throwable ex) {
+            log.error("Matching shard {} failed on {}", id, command.type, ex);
+            result.completeExceptionally(ex);
+        } finally {
+            command.clear();
+        }
+    }
+
+    void idle(int counter) {
+        if (counter < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (counter < YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            sleeping = true;
+            if (!ring.hasPending() && running) LockSupport.parkNanos(this, PARK_NANOS);
+            sleeping = false;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package exchange.core;
+
+import exchange.constant.OrderSide;
+import exchange.model.AssetDelta;
+import exchange.model.Order;
+
+import java.util.*;
+
+/**
+ * Orders placed together, possibly across several books and accounts. The collateral they lock is
+ * netted per account and asset, sorted so concurrent batches take row locks in the same order.
+ */
+public class OrderBatch {
+    final Map<OrderBook, Slice> slices = new LinkedHashMap<>();
+    final List<Order> orders = new ArrayList<>();
+
+    public OrderBatch add(OrderBook book, Order order, OrderSide side) {
+        if (book == null || side == null) {
+            throw new IllegalArgumentException("Every order needs a book and a side");
+        }
+        if (order.getPrice() <= 0L || order.getVolume() <= 0L) {
+            throw new IllegalArgumentException("Price and volume must be positive, got " + order.getPrice() + " x " + order.getVolume());
+        }
+        Slice slice = slices.computeIfAbsent(book, key -> new Slice());
+        slice.orders.add(order);
+        slice.sides.add(side);
+        orders.add(order);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return orders.isEmpty();
+    }
+
+    public int size() {
+        return orders.size();
+    }
+
+    public List<Order> getOrders() {
+        return orders;
+    }
+
+    void assignIds(long firstId) {
+        for (int i = 0; i < orders.size(); i++) {
+            orders.get(i).setId(firstId + i);
+        }
+    }
+
+    public List<AssetDelta> reservations() {
+        return reservations(slices.keySet());
+    }
+
+    List<AssetDelta> reservations(Collection<OrderBook> books) {
+        Map<String, Map<String, AssetDelta>> byAccount = new HashMap<>();
+        for (OrderBook book : books) {
+            Slice slice = slices.get(book);
+            for (int i = 0; i < slice.orders.size(); i++) {
+                Order order = slice.orders.get(i);
+                boolean ask = slice.sides.get(i) == OrderSide.ASK;
+                AssetDelta delta = byAccount
+                        .computeIfAbsent(order.getAccount().getId(), key -> new HashMap<>())
+                        .computeIfAbsent(ask ? book.getLeft() : book.getRight(),
+                                asset -> new AssetDelta(order.getAccount().getId(), asset));
+                long volume = ask ? order.getVolume() : Math.multiplyExact(order.getVolume(), order.getPrice());
+                delta.reserved = Math.addExact(delta.reserved, volume);
+            }
+        }
+        List<AssetDelta> result = new ArrayList<>();
+        byAccount.values().forEach(assets -> result.addAll(assets.values()));
+        result.sort(AssetDelta::compare);
+        return result;
+    }
+
+    static final class Slice {
+        final List<Order> orders = new ArrayList<>();
+        final List<OrderSide> sides = new ArrayList<>();
+    }
+}
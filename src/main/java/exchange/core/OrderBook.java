@@ -1,45 +1,132 @@
 package exchange.core;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import exchange.constant.CandleInterval;
+import exchange.constant.MatchingMode;
+import exchange.constant.OrderSide;
+import exchange.constant.OverflowPolicy;
+import exchange.engine.FanOut;
+import exchange.journal.Journal;
+import exchange.model.Fill;
 import exchange.model.Order;
 import exchange.model.Tx;
-import reactor.core.publisher.Flux;
+import exchange.view.CandleView;
+import exchange.view.DepthDeltaView;
+import exchange.view.StreamStatsView;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class OrderBook {
     final AtomicLong lastPrice = new AtomicLong(0L);
-    final PriorityQueue<Order> bid = new PriorityQueue<>(Order::inverseCompare);
-    final PriorityQueue<Order> ask = new PriorityQueue<>(Order::compare);
+    final OrderLadder bid = new OrderLadder(OrderSide.BID);
+    final OrderLadder ask = new OrderLadder(OrderSide.ASK);
     final Object sync = new Object();
 
-    final List<Tx> prices = Collections.synchronizedList(new ArrayList<>());
-    final Sinks.Many<Tx> sink = Sinks.many().multicast().onBackpressureBuffer();
+    static final int RECENT_HISTORY = 100;
+
+    static final int CANDLE_CAPACITY = 1440;
+
+    static final int STREAM_CAPACITY = 1024;
+
+    static final int MAX_WINDOW = 100_000;
+
+    static final int MAX_WINDOWS = 32;
+
+    final TradeHistory trades = new TradeHistory();
+    final Map<CandleInterval, CandleSeries> candles = new EnumMap<>(CandleInterval.class);
+    final Map<Integer, RollingWindow> windows = new ConcurrentHashMap<>();
+    final Map<Long, Fill> unsettled = new LinkedHashMap<>();
+    final FanOut<CandleView> candleSink;
+    final FanOut<Tx> sink;
+    final FanOut<DepthDeltaView> depthSink;
 
     String left;
     String right;
     String name;
+    volatile MatchingMode mode;
+    volatile boolean dirty = false;
+    volatile boolean halted = false;
+    Journal journal;
+    int bookId = -1;
+    volatile long version = 0L;
+    volatile long depthSequence = 0L;
+    volatile DepthSnapshot depth = DepthSnapshot.EMPTY;
+    volatile Consumer<Tx> tradeListener;
+    volatile long windowClock = 0L;
 
     public OrderBook(String baseId, String quoteId, String name) {
+        this(baseId, quoteId, name, MatchingMode.TICK);
+    }
+
+    public OrderBook(String baseId, String quoteId, String name, MatchingMode mode) {
+        this(baseId, quoteId, name, mode, STREAM_CAPACITY, OverflowPolicy.DROP_OLDEST);
+    }
+
+    public OrderBook(String baseId, String quoteId, String name, MatchingMode mode,
+                     int streamCapacity, OverflowPolicy overflowPolicy) {
         this.name = name;
         this.left = baseId;
         this.right = quoteId;
+        this.mode = mode;
+        for (CandleInterval interval : CandleInterval.values()) {
+            candles.put(interval, new CandleSeries(interval, CANDLE_CAPACITY));
+        }
+        sink = new FanOut<>(streamCapacity, overflowPolicy);
+        candleSink = new FanOut<>(streamCapacity, overflowPolicy);
+        depthSink = new FanOut<>(streamCapacity, overflowPolicy);
+    }
+
+    Mono<List<Fill>> placeBid(Order order) {
+        return Mono.just(place(order, OrderSide.BID, System.currentTimeMillis()));
+    }
+
+    Mono<List<Fill>> placeAsk(Order order) {
+        return Mono.just(place(order, OrderSide.ASK, System.currentTimeMillis()));
     }
 
-    Mono<Order> placeBid(Order order) {
+    List<Fill> place(Order order, OrderSide side, long time) {
         synchronized (sync) {
-            bid.add(order);
-            return Mono.just(order);
+            if (journal != null) {
+                journal.order(bookId, order.getId(), side, order.getPrice(), order.getVolume(), order.getAccount().getId());
+            }
+            (side == OrderSide.BID ? bid : ask).add(order);
+            version++;
+            if (mode == MatchingMode.CONTINUOUS) {
+                return match(time);
+            }
+            dirty = true;
+            return List.of();
         }
     }
 
-    Mono<Order> placeAsk(Order order) {
+    List<Fill> placeAll(List<Order> orders, List<OrderSide> sides, long time) {
         synchronized (sync) {
-            ask.add(order);
-            return Mono.just(order);
+            for (int i = 0; i < orders.size(); i++) {
+                Order order = orders.get(i);
+                OrderSide side = sides.get(i);
+                if (journal != null) {
+                    journal.order(bookId, order.getId(), side, order.getPrice(), order.getVolume(), order.getAccount().getId());
+                }
+                (side == OrderSide.BID ? bid : ask).add(order);
+            }
+            version++;
+            if (mode == MatchingMode.CONTINUOUS) {
+                return match(time);
+            }
+            dirty = true;
+            return List.of();
+        }
+    }
+
+    void restore(Order order, OrderSide side) {
+        synchronized (sync) {
+            (side == OrderSide.BID ? bid : ask).add(order);
+            version++;
+            dirty = true;
         }
     }
 
@@ -47,66 +134,118 @@ public class OrderBook {
         return a.compareAtSamePrice(b) < 0 ? a.getPrice() : b.getPrice();
     }
 
-    Mono<Long> matchMultiple(AssetManager repo, final long repoTime) {
-        final List<Pair> combinations = new LinkedList<>();
-        final List<Order> bidsToRemove = new LinkedList<>();
-        final List<Order> asksToRemove = new LinkedList<>();
-        boolean endSearch = false;
-        for (Order bidPeek : bid) {
-            for (Order askPeek : ask) {
-                if (bidPeek.getPrice() < askPeek.getPrice()) {
-                    endSearch = true;
-                    break;
+    List<Fill> match(long time) {
+        final List<Fill> fills = new ArrayList<>();
+        synchronized (sync) {
+            dirty = false;
+            PriceLevel bidLevel = bid.best();
+            while (bidLevel != null && ask.crosses(bidLevel.price)) {
+                Order bidPeek = bidLevel.peek();
+                Order askPeek = ask.best().peek();
+                long price = determinePrice(bidPeek, askPeek);
+                long transferVolume = Long.min(bidPeek.getRealVolume(), askPeek.getRealVolume());
+                if (journal != null) {
+                    journal.fill(bookId, bidPeek.getId(), askPeek.getId(), price, transferVolume, time);
                 }
-                long bidVolume = bidPeek.getRealVolume();
-                long askVolume = askPeek.getRealVolume();
-                if (bidVolume == 0L || askVolume == 0L) {
-                    if (bidVolume == 0L) bidsToRemove.add(bidPeek);
-                    if (askVolume == 0L) asksToRemove.add(askPeek);
-                    continue;
+                fills.add(apply(bidPeek, askPeek, price, transferVolume, time));
+                bidLevel = bid.best();
+            }
+            publishDepth(time);
+        }
+        return fills;
+    }
+
+    void publishDepth(long time) {
+        if (!bid.hasChanges() && !ask.hasChanges()) return;
+        depthSequence++;
+        depthSink.publish(new DepthDeltaView(name, depthSequence, time, bid.drainChanges(), ask.drainChanges()));
+    }
+
+    Fill apply(Order bidOrder, Order askOrder, long price, long volume, long time) {
+        bidOrder.fill(volume);
+        askOrder.fill(volume);
+        bid.fill(bidOrder, volume);
+        ask.fill(askOrder, volume);
+        version++;
+        Fill fill = new Fill(bidOrder, askOrder, price, volume);
+        fill.seq = trades.append(time, price, volume);
+        fill.time = trades.getTime(fill.seq);
+        unsettled.put(fill.seq, fill);
+        lastPrice.set(price);
+        for (CandleSeries series : candles.values()) {
+            candleSink.publish(series.update(fill.time, price, volume));
+        }
+        for (RollingWindow window : windows.values()) {
+            window.add(price);
+        }
+        return fill;
+    }
+
+    void record(Fill fill) {
+        Tx tx = new Tx(fill.seq, fill.time, fill.price, fill.volume);
+        sink.publish(tx);
+        Consumer<Tx> listener = tradeListener;
+        if (listener != null) {
+            listener.accept(tx);
+        }
+    }
+
+    /**
+     * Called once the account store holds the balance transfers of these fills. The journal marks
+     * them settled, so replay only re-settles fills whose transfers may have been lost.
+     */
+    void settled(List<Fill> fills) {
+        synchronized (sync) {
+            if (journal != null) {
+                long[] seqs = new long[fills.size()];
+                for (int i = 0; i < seqs.length; i++) {
+                    seqs[i] = fills.get(i).seq;
                 }
-                combinations.add(new Pair(bidPeek, askPeek));
+                journal.settle(bookId, seqs);
             }
-            if (endSearch) break;
-        }
-        bid.removeAll(bidsToRemove);
-        ask.removeAll(asksToRemove);
-
-        return Flux.fromIterable(combinations)
-                .flatMap(tuple -> {
-                    Order bidPeek = tuple.bid;
-                    Order askPeek = tuple.ask;
-                    long price = determinePrice(bidPeek, askPeek);
-                    long transferVolume = Long.min(bidPeek.getRealVolume(), askPeek.getRealVolume());
-                    return repo
-                            .transaction(bidPeek, askPeek, left, right, price, transferVolume)
-                            .flatMap(result -> {
-                                Tx tx = new Tx(repoTime, price, transferVolume);
-                                prices.add(tx);
-                                sink.tryEmitNext(tx);
-                                return Mono.just(1L);
-                            });
-                })
-                .reduce(Long::sum);
-    }
-
-    private Map<Long, Long> summarizeSide(final PriorityQueue<Order> orders) {
-        Map<Long, Long> summary = new HashMap<>();
-        for (Order order : orders) {
-            if (!summary.containsKey(order.getPrice())) {
-                summary.put(order.getPrice(), 0L);
+            for (Fill fill : fills) {
+                unsettled.remove(fill.seq);
             }
-            summary.put(order.getPrice(), summary.get(order.getPrice()) + order.getRealVolume());
         }
-        return summary;
+    }
+
+    List<Fill> getUnsettled() {
+        synchronized (sync) {
+            return new ArrayList<>(unsettled.values());
+        }
+    }
+
+    /**
+     * Sees every settled trade, in order and unlike sink subscribers never dropped. It is called on
+     * the settling thread, so it must hand the trade off rather than block.
+     */
+    public void setTradeListener(Consumer<Tx> tradeListener) {
+        this.tradeListener = tradeListener;
+    }
+
+    public DepthSnapshot getDepth() {
+        DepthSnapshot current = depth;
+        if (current.version == version) return current;
+        synchronized (sync) {
+            current = depth;
+            if (current.version != version) {
+                current = DepthSnapshot.of(version, depthSequence, bid, ask, lastPrice.get(), trades.tail(RECENT_HISTORY));
+                depth = current;
+            }
+            return current;
+        }
     }
 
     public Map<Long, Long> getBids() {
-        return summarizeSide(bid);
+        synchronized (sync) {
+            return bid.depth();
+        }
     }
 
     public Map<Long, Long> getAsks() {
-        return summarizeSide(ask);
+        synchronized (sync) {
+            return ask.depth();
+        }
     }
 
     public String getLeft() {
@@ -122,33 +261,140 @@ public class OrderBook {
     }
 
     public List<Tx> getPriceHistory() {
-        return prices.stream().toList();
+        return trades.tail(RECENT_HISTORY);
+    }
+
+    /**
+     * A window kept up to date by every trade, for registered strategies. Windows nobody asked for
+     * during the last few ticks are dropped by {@link #evictWindows}.
+     */
+    public RollingWindow getWindow(int size) {
+        int capacity = windowCapacity(size);
+        RollingWindow window = windows.get(capacity);
+        if (window == null) {
+            synchronized (sync) {
+                window = windows.get(capacity);
+                if (window == null) {
+                    if (windows.size() >= MAX_WINDOWS) {
+                        throw new IllegalStateException("Book " + name + " already tracks " + MAX_WINDOWS + " windows");
+                    }
+                    window = fill(new RollingWindow(capacity));
+                    windows.put(capacity, window);
+                }
+            }
+        }
+        window.lastUsed = windowClock;
+        return window;
+    }
+
+    /**
+     * A one-off window: the tracked one when it exists, otherwise a copy built from the trade history
+     * that the book does not keep or update.
+     */
+    public RollingWindow peekWindow(int size) {
+        int capacity = windowCapacity(size);
+        RollingWindow window = windows.get(capacity);
+        return window != null ? window : fill(new RollingWindow(capacity));
+    }
+
+    static int windowCapacity(int size) {
+        return size <= 0 ? RECENT_HISTORY : Math.min(size, MAX_WINDOW);
+    }
+
+    RollingWindow fill(RollingWindow window) {
+        long count = trades.size();
+        for (long seq = Math.max(0L, count - window.capacity); seq < count; seq++) {
+            window.add(trades.getPrice(seq));
+        }
+        return window;
+    }
+
+    void evictWindows(long idleTicks) {
+        if (windows.isEmpty()) return;
+        synchronized (sync) {
+            windowClock++;
+            windows.values().removeIf(window -> windowClock - window.lastUsed > idleTicks);
+        }
+    }
+
+    public CandleSeries getCandles(CandleInterval interval) {
+        return candles.get(interval);
+    }
+
+    @JsonIgnore
+    public FanOut<CandleView> getCandleSink() {
+        return candleSink;
+    }
+
+    @JsonIgnore
+    public TradeHistory getTrades() {
+        return trades;
     }
 
     public String getName() {
         return name;
     }
 
+    public MatchingMode getMode() {
+        return mode;
+    }
+
+    void setMode(MatchingMode mode) {
+        synchronized (sync) {
+            if (journal != null) {
+                journal.mode(bookId, mode);
+            }
+            this.mode = mode;
+            dirty = true;
+        }
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Stops matching and order entry on a book whose fills could not be settled, so the book and the
+     * balances do not drift further apart.
+     */
+    void halt() {
+        halted = true;
+    }
+
+    public boolean isHalted() {
+        return halted;
+    }
+
     @JsonIgnore
-    public Sinks.Many<Tx> getSink() {
-        return sink;
+    public FanOut<DepthDeltaView> getDepthSink() {
+        return depthSink;
     }
 
-    public Order getTopBid() {
-        return bid.peek();
+    @JsonIgnore
+    public FanOut<Tx> getSink() {
+        return sink;
     }
 
-    public Order getTopAsk() {
-        return ask.peek();
+    @JsonIgnore
+    public Map<String, StreamStatsView> getStreamStats() {
+        Map<String, StreamStatsView> stats = new LinkedHashMap<>();
+        stats.put("trades", sink.stats());
+        stats.put("candles", candleSink.stats());
+        stats.put("depth", depthSink.stats());
+        return stats;
     }
 
-    public final class Pair {
-        Order bid;
-        Order ask;
+    public Order getTopBid() {
+        synchronized (sync) {
+            PriceLevel level = bid.best();
+            return level == null ? null : level.peek();
+        }
+    }
 
-        public Pair(Order bid, Order ask) {
-            this.bid = bid;
-            this.ask = ask;
+    public Order getTopAsk() {
+        synchronized (sync) {
+            PriceLevel level = ask.best();
+            return level == null ? null : level.peek();
         }
     }
 }
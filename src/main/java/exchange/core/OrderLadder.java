@@ -0,0 +1,83 @@
+package exchange.core;
+
+import exchange.constant.OrderSide;
+import exchange.model.Order;
+import exchange.view.AggregateOrderView;
+
+import java.util.*;
+
+public class OrderLadder {
+    final OrderSide side;
+    final TreeMap<Long, PriceLevel> levels;
+    final Set<Long> changed = new LinkedHashSet<>();
+    long volume = 0L;
+    int orderCount = 0;
+
+    public OrderLadder(OrderSide side) {
+        this.side = side;
+        this.levels = new TreeMap<>(side == OrderSide.BID ? Comparator.<Long>reverseOrder() : Comparator.<Long>naturalOrder());
+    }
+
+    boolean add(Order order) {
+        if (order.getRealVolume() <= 0L) return false;
+        levels.computeIfAbsent(order.getPrice(), PriceLevel::new).add(order);
+        changed.add(order.getPrice());
+        volume += order.getRealVolume();
+        orderCount++;
+        return true;
+    }
+
+    PriceLevel best() {
+        Map.Entry<Long, PriceLevel> entry = levels.firstEntry();
+        return entry == null ? null : entry.getValue();
+    }
+
+    void fill(Order order, long filled) {
+        PriceLevel level = levels.get(order.getPrice());
+        level.fill(order, filled);
+        changed.add(level.price);
+        volume -= filled;
+        if (order.getRealVolume() == 0L) orderCount--;
+        if (level.isEmpty()) levels.remove(level.price);
+    }
+
+    boolean crosses(long price) {
+        PriceLevel level = best();
+        if (level == null) return false;
+        return side == OrderSide.BID ? level.price >= price : level.price <= price;
+    }
+
+    boolean hasChanges() {
+        return !changed.isEmpty();
+    }
+
+    List<AggregateOrderView> drainChanges() {
+        List<AggregateOrderView> result = new ArrayList<>(changed.size());
+        for (long price : changed) {
+            PriceLevel level = levels.get(price);
+            result.add(new AggregateOrderView(price, level == null ? 0L : level.volume));
+        }
+        changed.clear();
+        return result;
+    }
+
+    Map<Long, Long> depth() {
+        Map<Long, Long> result = new LinkedHashMap<>();
+        for (PriceLevel level : levels.values()) {
+            result.put(level.price, level.volume);
+        }
+        return result;
+    }
+
+    public long getVolume() {
+        return volume;
+    }
+
+    public int getOrderCount() {
+        return orderCount;
+    }
+
+    public int getLevelCount() {
+        return levels.size();
+    }
+}
@@ -0,0 +1,51 @@
+package exchange.core;
+
+import exchange.model.Order;
+
+import java.util.ArrayDeque;
+
+public class PriceLevel {
+    final long price;
+    final ArrayDeque<Order> orders = new ArrayDeque<>();
+    long volume = 0L;
+
+    PriceLevel(long price) {
+        this.price = price;
+    }
+
+    void add(Order order) {
+        orders.addLast(order);
+        volume += order.getRealVolume();
+    }
+
+    Order peek() {
+        return orders.peekFirst();
+    }
+
+    void fill(Order order, long filled) {
+        volume -= filled;
+        if (order.getRealVolume() == 0L) {
+            if (orders.peekFirst() == order) {
+                orders.pollFirst();
+            } else {
+                orders.removeIf(resting -> resting == order);
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return orders.isEmpty();
+    }
+
+    public long getPrice() {
+        return price;
+    }
+
+    public long getVolume() {
+        return volume;
+    }
+
+    public int getOrderCount() {
+        return orders.size();
+    }
+}
@@ -0,0 +1,158 @@
+package exchange.core;
+
+import java.util.TreeMap;
+
+/**
+ * Statistics over the last {@code capacity} trade prices, updated per trade: a running sum for the
+ * mean, Welford's running mean and squared deviations for the deviation (squares of large prices
+ * overflow a long), monotonic deques of positions for min and max, and two counted multisets split
+ * around the median.
+ */
+public class RollingWindow {
+    final int capacity;
+    final long[] values;
+    long count = 0L;
+    long sum = 0L;
+    double runningMean = 0.0;
+    double squaredDeviations = 0.0;
+
+    final long[] minQueue;
+    int minHead = 0;
+    int minSize = 0;
+    final long[] maxQueue;
+    int maxHead = 0;
+    int maxSize = 0;
+
+    final TreeMap<Long, Integer> lower = new TreeMap<>();
+    final TreeMap<Long, Integer> upper = new TreeMap<>();
+    int lowerSize = 0;
+    int upperSize = 0;
+    volatile long lastUsed = 0L;
+
+    public RollingWindow(int capacity) {
+        this.capacity = capacity;
+        this.values = new long[capacity];
+        this.minQueue = new long[capacity];
+        this.maxQueue = new long[capacity];
+    }
+
+    public synchronized void add(long value) {
+        if (count >= capacity) {
+            evict(values[(int) (count % capacity)], count - capacity);
+            rebalance();
+        }
+        long position = count++;
+        values[(int) (position % capacity)] = value;
+        sum += value;
+        int size = size();
+        double delta = value - runningMean;
+        runningMean += delta / size;
+        squaredDeviations += delta * (value - runningMean);
+
+        while (minSize > 0 && valueAt(minQueue[(minHead + minSize - 1) % capacity]) >= value) minSize--;
+        minQueue[(minHead + minSize++) % capacity] = position;
+        while (maxSize > 0 && valueAt(maxQueue[(maxHead + maxSize - 1) % capacity]) <= value) maxSize--;
+        maxQueue[(maxHead + maxSize++) % capacity] = position;
+
+        if (lowerSize == 0 || value <= lower.lastKey()) {
+            increment(lower, value);
+            lowerSize++;
+        } else {
+            increment(upper, value);
+            upperSize++;
+        }
+        rebalance();
+    }
+
+    void evict(long value, long position) {
+        sum -= value;
+        int remaining = capacity - 1;
+        if (remaining == 0) {
+            runningMean = 0.0;
+            squaredDeviations = 0.0;
+        } else {
+            double delta = value - runningMean;
+            runningMean -= delta / remaining;
+            squaredDeviations -= delta * (value - runningMean);
+        }
+        if (minSize > 0 && minQueue[minHead] == position) {
+            minHead = (minHead + 1) % capacity;
+            minSize--;
+        }
+        if (maxSize > 0 && maxQueue[maxHead] == position) {
+            maxHead = (maxHead + 1) % capacity;
+            maxSize--;
+        }
+        if (value <= lower.lastKey()) {
+            decrement(lower, value);
+            lowerSize--;
+        } else {
+            decrement(upper, value);
+            upperSize--;
+        }
+    }
+
+    void rebalance() {
+        while (lowerSize > upperSize + 1) {
+            long moved = lower.lastKey();
+            decrement(lower, moved);
+            increment(upper, moved);
+            lowerSize--;
+            upperSize++;
+        }
+        while (upperSize > lowerSize) {
+            long moved = upper.firstKey();
+            decrement(upper, moved);
+            increment(lower, moved);
+            upperSize--;
+            lowerSize++;
+        }
+    }
+
+    long valueAt(long position) {
+        return values[(int) (position % capacity)];
+    }
+
+    static void increment(TreeMap<Long, Integer> set, long value) {
+        set.merge(value, 1, Integer::sum);
+    }
+
+    static void decrement(TreeMap<Long, Integer> set, long value) {
+        int remaining = set.get(value) - 1;
+        if (remaining == 0) set.remove(value);
+        else set.put(value, remaining);
+    }
+
+    public synchronized int size() {
+        return (int) Math.min(count, capacity);
+    }
+
+    public synchronized long mean() {
+        int size = size();
+        return size == 0 ? 0L : Math.round((double) sum / size);
+    }
+
+    public synchronized long std() {
+        int size = size();
+        if (size == 0) return 0L;
+        return Math.round(Math.sqrt(Math.max(0.0, squaredDeviations / size)));
+    }
+
+    public synchronized long min() {
+        return minSize == 0 ? 0L : valueAt(minQueue[minHead]);
+    }
+
+    public synchronized long max() {
+        return maxSize == 0 ? 0L : valueAt(maxQueue[maxHead]);
+    }
+
+    public synchronized long median() {
+        if (lowerSize == 0) return 0L;
+        if (lowerSize > upperSize) return lower.lastKey();
+        return Math.round((lower.lastKey() + upper.firstKey()) / 2.0);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,96 @@
+package exchange.core;
+
+import exchange.model.AssetDelta;
+import exchange.model.Fill;
+
+import java.util.*;
+
+public class SettlementBatch {
+    final List<OrderBook> books = new ArrayList<>();
+    final List<Fill> fills = new ArrayList<>();
+
+    public SettlementBatch() {
+
+    }
+
+    public SettlementBatch(OrderBook book, List<Fill> fills) {
+        add(book, fills);
+    }
+
+    public void add(OrderBook book, List<Fill> bookFills) {
+        for (Fill fill : bookFills) {
+            books.add(book);
+            fills.add(fill);
+        }
+    }
+
+    public void add(SettlementBatch other) {
+        books.addAll(other.books);
+        fills.addAll(other.fills);
+    }
+
+    public boolean isEmpty() {
+        return fills.isEmpty();
+    }
+
+    public int size() {
+        return fills.size();
+    }
+
+    public List<AssetDelta> netTransfers() {
+        Map<String, Map<String, AssetDelta>> byAccount = new HashMap<>();
+        for (int i = 0; i < fills.size(); i++) {
+            OrderBook book = books.get(i);
+            Fill fill = fills.get(i);
+            long quoteVolume = Math.multiplyExact(fill.price, fill.volume);
+            // the bid reserved at its own limit, so a fill at a better price releases the difference too
+            long bidReserve = Math.multiplyExact(fill.bid.getPrice(), fill.volume);
+            String bidder = fill.bid.getAccount().getId();
+            String asker = fill.ask.getAccount().getId();
+
+            AssetDelta bidRight = delta(byAccount, bidder, book.getRight());
+            bidRight.amount -= quoteVolume;
+            bidRight.reserved -= bidReserve;
+            delta(byAccount, bidder, book.getLeft()).amount += fill.volume;
+
+            delta(byAccount, asker, book.getRight()).amount += quoteVolume;
+            AssetDelta askLeft = delta(byAccount, asker, book.getLeft());
+            askLeft.amount -= fill.volume;
+            askLeft.reserved -= fill.volume;
+        }
+        List<AssetDelta> result = new ArrayList<>();
+        for (Map<String, AssetDelta> assets : byAccount.values()) {
+            for (AssetDelta delta : assets.values()) {
+                if (delta.amount != 0L || delta.reserved != 0L) result.add(delta);
+            }
+        }
+        result.sort(AssetDelta::compare);
+        return result;
+    }
+
+    private static AssetDelta delta(Map<String, Map<String, AssetDelta>> byAccount, String accountId, String assetId) {
+        return byAccount
+                .computeIfAbsent(accountId, id -> new HashMap<>())
+                .computeIfAbsent(assetId, id -> new AssetDelta(accountId, id));
+    }
+
+    Map<OrderBook, SettlementBatch> byBook() {
+        Map<OrderBook, SettlementBatch> result = new LinkedHashMap<>();
+        for (int i = 0; i < fills.size(); i++) {
+            result.computeIfAbsent(books.get(i), book -> new SettlementBatch()).add(books.get(i), List.of(fills.get(i)));
+        }
+        return result;
+    }
+
+    void markSettled() {
+        for (Map.Entry<OrderBook, SettlementBatch> entry : byBook().entrySet()) {
+            entry.getKey().settled(entry.getValue().fills);
+        }
+    }
+
+    void publish() {
+        for (int i = 0; i < fills.size(); i++) {
+            books.get(i).record(fills.get(i));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package exchange.core;
+
+import exchange.model.Tx;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only trade columns stored in fixed-size primitive chunks. Trades are addressed by
+ * sequence number; times never decrease, so both sequence and time lookups are O(log n).
+ * One writer at a time; readers never lock and only see trades below the published size.
+ */
+public class TradeHistory {
+    static final int CHUNK_BITS = 12;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    static final class Columns {
+        final long[][] times;
+        final long[][] prices;
+        final long[][] volumes;
+
+        Columns(int chunks) {
+            times = new long[chunks][];
+            prices = new long[chunks][];
+            volumes = new long[chunks][];
+        }
+
+        Columns grow() {
+            Columns next = new Columns(times.length * 2);
+            System.arraycopy(times, 0, next.times, 0, times.length);
+            System.arraycopy(prices, 0, next.prices, 0, prices.length);
+            System.arraycopy(volumes, 0, next.volumes, 0, volumes.length);
+            return next;
+        }
+    }
+
+    volatile Columns columns = new Columns(4);
+    volatile long size = 0L;
+    long lastTime = Long.MIN_VALUE;
+
+    public synchronized long append(long time, long price, long volume) {
+        long sequence = size;
+        int chunk = (int) (sequence >>> CHUNK_BITS);
+        int offset = (int) sequence & CHUNK_MASK;
+        Columns current = columns;
+        if (offset == 0) {
+            if (chunk == current.times.length) current = current.grow();
+            current.times[chunk] = new long[CHUNK_SIZE];
+            current.prices[chunk] = new long[CHUNK_SIZE];
+            current.volumes[chunk] = new long[CHUNK_SIZE];
+            columns = current;
+        }
+        lastTime = Math.max(lastTime, time);
+        current.times[chunk][offset] = lastTime;
+        current.prices[chunk][offset] = price;
+        current.volumes[chunk][offset] = volume;
+        size = sequence + 1;
+        return sequence;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long getTime(long sequence) {
+        return columns.times[(int) (sequence >>> CHUNK_BITS)][(int) sequence & CHUNK_MASK];
+    }
+
+    public long getPrice(long sequence) {
+        return columns.prices[(int) (sequence >>> CHUNK_BITS)][(int) sequence & CHUNK_MASK];
+    }
+
+    public long getVolume(long sequence) {
+        return columns.volumes[(int) (sequence >>> CHUNK_BITS)][(int) sequence & CHUNK_MASK];
+    }
+
+    public long seekTime(long time) {
+        long low = 0L;
+        long high = size;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (getTime(mid) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public List<Tx> read(long fromSequence, int limit) {
+        long end = Math.min(size, Math.max(0L, fromSequence) + Math.max(0, limit));
+        List<Tx> result = new ArrayList<>((int) Math.max(0L, end - fromSequence));
+        for (long sequence = Math.max(0L, fromSequence); sequence < end; sequence++) {
+            result.add(get(sequence));
+        }
+        return result;
+    }
+
+    public List<Tx> tail(int limit) {
+        return read(Math.max(0L, size - limit), limit);
+    }
+
+    public Tx get(long sequence) {
+        Columns current = columns;
+        int chunk = (int) (sequence >>> CHUNK_BITS);
+        int offset = (int) sequence & CHUNK_MASK;
+        return new Tx(sequence, current.times[chunk][offset], current.prices[chunk][offset], current.volumes[chunk][offset]);
+    }
+}
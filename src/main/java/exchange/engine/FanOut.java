@@ -0,0 +1,153 @@
+package exchange.engine;
+
+import exchange.constant.OverflowPolicy;
+import exchange.view.StreamStatsView;
+import exchange.view.SubscriberStatsView;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multicasts events to subscribers that each own a fixed-size ring. Publishing never waits on a
+ * subscriber; when a ring is full the overflow policy decides what the subscriber loses.
+ */
+public class FanOut<T> {
+    final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    final AtomicLong subscriberIds = new AtomicLong(0L);
+    final AtomicLong published = new AtomicLong(0L);
+    final AtomicLong disconnected = new AtomicLong(0L);
+    final Scheduler scheduler;
+    final int capacity;
+    final OverflowPolicy policy;
+
+    public FanOut(int capacity, OverflowPolicy policy) {
+        this(capacity, policy, Schedulers.parallel());
+    }
+
+    public FanOut(int capacity, OverflowPolicy policy, Scheduler scheduler) {
+        this.capacity = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.policy = policy;
+        this.scheduler = scheduler;
+    }
+
+    public void publish(T value) {
+        published.incrementAndGet();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(value);
+        }
+    }
+
+    public Flux<T> asFlux() {
+        return Flux.create(sink -> {
+            Subscriber subscriber = new Subscriber(subscriberIds.incrementAndGet(), sink);
+            subscribers.add(subscriber);
+            sink.onRequest(n -> subscriber.signal());
+            sink.onDispose(() -> subscribers.remove(subscriber));
+        }, FluxSink.OverflowStrategy.ERROR);
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public StreamStatsView stats() {
+        List<SubscriberStatsView> result = new ArrayList<>(subscribers.size());
+        for (Subscriber subscriber : subscribers) {
+            result.add(subscriber.stats());
+        }
+        return new StreamStatsView(policy, capacity, published.get(), disconnected.get(), result);
+    }
+
+    final class Subscriber {
+        final long id;
+        final FluxSink<T> sink;
+        final Object[] ring = new Object[capacity];
+        final int mask = capacity - 1;
+        final AtomicInteger wip = new AtomicInteger();
+        long head = 0L;
+        long tail = 0L;
+        long dropped = 0L;
+        long delivered = 0L;
+        boolean closed = false;
+
+        Subscriber(long id, FluxSink<T> sink) {
+            this.id = id;
+            this.sink = sink;
+        }
+
+        void offer(T value) {
+            boolean overflow = false;
+            synchronized (this) {
+                if (closed) return;
+                if (tail - head == capacity) {
+                    switch (policy) {
+                        case DROP_OLDEST -> {
+                            ring[(int) head++ & mask] = null;
+                            dropped++;
+                        }
+                        case CONFLATE -> {
+                            dropped += tail - head;
+                            while (head < tail) ring[(int) head++ & mask] = null;
+                        }
+                        case DISCONNECT -> {
+                            closed = true;
+                            overflow = true;
+                        }
+                    }
+                }
+                if (!closed) {
+                    ring[(int) tail++ & mask] = value;
+                }
+            }
+            if (overflow) {
+                disconnected.incrementAndGet();
+                subscribers.remove(this);
+                sink.error(Exceptions.failWithOverflow("Subscriber " + id + " fell " + capacity + " events behind"));
+                return;
+            }
+            signal();
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized T poll() {
+            if (head == tail) return null;
+            int index = (int) head++ & mask;
+            T value = (T) ring[index];
+            ring[index] = null;
+            delivered++;
+            return value;
+        }
+
+        void signal() {
+            if (wip.getAndIncrement() == 0) {
+                scheduler.schedule(this::drain);
+            }
+        }
+
+        void drain() {
+            int missed = 1;
+            do {
+                long requested = sink.requestedFromDownstream();
+                while (requested > 0 && !sink.isCancelled()) {
+                    T value = poll();
+                    if (value == null) break;
+                    sink.next(value);
+                    requested--;
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        synchronized SubscriberStatsView stats() {
+            return new SubscriberStatsView(id, tail - head, dropped, delivered);
+        }
+    }
+}
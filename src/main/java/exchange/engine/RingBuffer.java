@@ -0,0 +1,99 @@
+package exchange.engine;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded multi-producer, single-consumer ring of pre-allocated slots.
+ * Producers claim a sequence with a CAS on the cursor, fill the slot and publish it;
+ * the consumer drains contiguous published slots and only then releases them for reuse.
+ */
+public class RingBuffer<E> {
+    final Object[] entries;
+    final AtomicIntegerArray published;
+    final int mask;
+    final int shift;
+    final Sequence cursor = new Sequence(-1L);
+    final Sequence consumed = new Sequence(-1L);
+
+    public RingBuffer(int capacity, Supplier<E> factory) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+        }
+        entries = new Object[capacity];
+        published = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            entries[i] = factory.get();
+            published.set(i, -1);
+        }
+        mask = capacity - 1;
+        shift = Integer.numberOfTrailingZeros(capacity);
+    }
+
+    /**
+     * Waits for a free slot, so only for producers that may block; request and reactor threads use
+     * {@link #tryNext()} and handle a full ring themselves.
+     */
+    public long next() {
+        while (true) {
+            long current = cursor.get();
+            long next = current + 1;
+            if (next - entries.length > consumed.get()) {
+                LockSupport.parkNanos(1L);
+                continue;
+            }
+            if (cursor.compareAndSet(current, next)) return next;
+        }
+    }
+
+    /**
+     * Claims the next slot, or returns -1 at once when the ring is full.
+     */
+    public long tryNext() {
+        while (true) {
+            long current = cursor.get();
+            long next = current + 1;
+            if (next - entries.length > consumed.get()) return -1L;
+            if (cursor.compareAndSet(current, next)) return next;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) sequence & mask];
+    }
+
+    public void publish(long sequence) {
+        published.lazySet((int) sequence & mask, (int) (sequence >>> shift));
+    }
+
+    boolean isPublished(long sequence) {
+        return published.get((int) sequence & mask) == (int) (sequence >>> shift);
+    }
+
+    public boolean hasPending() {
+        return cursor.get() > consumed.get();
+    }
+
+    public int drain(Consumer<E> handler, int maxBatch) {
+        long first = consumed.get() + 1;
+        long limit = cursor.get();
+        long sequence = first;
+        while (sequence <= limit && sequence - first < maxBatch && isPublished(sequence)) {
+            handler.accept(get(sequence));
+            sequence++;
+        }
+        if (sequence != first) consumed.set(sequence - 1);
+        return (int) (sequence - first);
+    }
+
+    public int getCapacity() {
+        return entries.length;
+    }
+
+    public long size() {
+        return cursor.get() - consumed.get();
+    }
+}
@@ -0,0 +1,11 @@
+package exchange.exc;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class BookHalted extends SEException {
+    public BookHalted(String book) {
+        super("Book " + book + " is halted until its fills are settled");
+    }
+}
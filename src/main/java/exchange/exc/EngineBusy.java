@@ -0,0 +1,11 @@
+package exchange.exc;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class EngineBusy extends SEException {
+    public EngineBusy(int shard) {
+        super("Matching shard " + shard + " is full, try again");
+    }
+}
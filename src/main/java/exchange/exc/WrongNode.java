@@ -0,0 +1,11 @@
+package exchange.exc;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class WrongNode extends SEException {
+    public WrongNode(String book, String owner) {
+        super("Book " + book + " is owned by " + owner);
+    }
+}
@@ -0,0 +1,242 @@
+package exchange.journal;
+
+import exchange.constant.MatchingMode;
+import exchange.constant.OrderSide;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Append-only event log split into fixed-size memory-mapped segments named by their base position.
+ * A record is {@code [int length][byte type][payload]}; the length is written last, so a zero
+ * length marks the end of the log even after a crash in the middle of a write.
+ */
+public class Journal implements Closeable {
+    static final byte BOOK = 1;
+    static final byte ORDER = 2;
+    static final byte FILL = 3;
+    static final byte MODE = 4;
+    static final byte SETTLE = 5;
+    static final String SUFFIX = ".journal";
+
+    final Path directory;
+    final int segmentSize;
+    FileChannel channel;
+    MappedByteBuffer buffer;
+    long base;
+
+    public Journal(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        List<Long> segments = segments();
+        open(segments.isEmpty() ? 0L : segments.get(segments.size() - 1));
+        int offset = 0;
+        while (offset + Integer.BYTES <= segmentSize) {
+            int length = buffer.getInt(offset);
+            if (length == 0) break;
+            offset += Integer.BYTES + length;
+        }
+        buffer.position(Math.min(offset, segmentSize));
+    }
+
+    private void open(long segmentBase) throws IOException {
+        if (channel != null) {
+            buffer.force();
+            channel.close();
+        }
+        base = segmentBase;
+        channel = FileChannel.open(segmentPath(segmentBase),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    Path segmentPath(long segmentBase) {
+        return directory.resolve(String.format("%020d%s", segmentBase, SUFFIX));
+    }
+
+    List<Long> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    public synchronized long position() {
+        return base + buffer.position();
+    }
+
+    public synchronized long book(int bookId, String baseAsset, String quoteAsset, MatchingMode mode) {
+        byte[] baseBytes = baseAsset.getBytes(StandardCharsets.UTF_8);
+        byte[] quoteBytes = quoteAsset.getBytes(StandardCharsets.UTF_8);
+        int start = begin(BOOK, Integer.BYTES + 2 * Short.BYTES + baseBytes.length + quoteBytes.length + 1);
+        buffer.putInt(bookId);
+        putString(baseBytes);
+        putString(quoteBytes);
+        buffer.put((byte) mode.ordinal());
+        return commit(start);
+    }
+
+    public synchronized long order(int bookId, long orderId, OrderSide side, long price, long volume, String account) {
+        byte[] accountBytes = account.getBytes(StandardCharsets.UTF_8);
+        int start = begin(ORDER, Integer.BYTES + 3 * Long.BYTES + 1 + Short.BYTES + accountBytes.length);
+        buffer.putInt(bookId);
+        buffer.putLong(orderId);
+        buffer.put((byte) side.ordinal());
+        buffer.putLong(price);
+        buffer.putLong(volume);
+        putString(accountBytes);
+        return commit(start);
+    }
+
+    public synchronized long fill(int bookId, long bidId, long askId, long price, long volume, long time) {
+        int start = begin(FILL, Integer.BYTES + 5 * Long.BYTES);
+        buffer.putInt(bookId);
+        buffer.putLong(bidId);
+        buffer.putLong(askId);
+        buffer.putLong(price);
+        buffer.putLong(volume);
+        buffer.putLong(time);
+        return commit(start);
+    }
+
+    public synchronized long mode(int bookId, MatchingMode mode) {
+        int start = begin(MODE, Integer.BYTES + 1);
+        buffer.putInt(bookId);
+        buffer.put((byte) mode.ordinal());
+        return commit(start);
+    }
+
+    /**
+     * Records that the account store has taken the balance transfers of these fills. Long lists are
+     * split over several records so each fits a segment.
+     */
+    public synchronized void settle(int bookId, long[] seqs) {
+        int perRecord = Math.max(1, (segmentSize - 64) / Long.BYTES);
+        for (int from = 0; from < seqs.length; from += perRecord) {
+            int count = Math.min(perRecord, seqs.length - from);
+            int start = begin(SETTLE, 2 * Integer.BYTES + count * Long.BYTES);
+            buffer.putInt(bookId);
+            buffer.putInt(count);
+            for (int i = from; i < from + count; i++) {
+                buffer.putLong(seqs[i]);
+            }
+            commit(start);
+        }
+    }
+
+    private int begin(byte type, int payloadLength) {
+        int length = 1 + payloadLength;
+        if (Integer.BYTES + length > segmentSize) {
+            throw new IllegalArgumentException("Journal record larger than segment: " + length);
+        }
+        if (buffer.position() + Integer.BYTES + length > segmentSize) {
+            try {
+                open(base + segmentSize);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        int start = buffer.position();
+        buffer.position(start + Integer.BYTES);
+        buffer.put(type);
+        return start;
+    }
+
+    private long commit(int start) {
+        buffer.putInt(start, buffer.position() - start - Integer.BYTES);
+        return base + start;
+    }
+
+    private void putString(byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(MappedByteBuffer source) {
+        byte[] bytes = new byte[source.getShort() & 0xFFFF];
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public long read(long from, JournalHandler handler) throws IOException {
+        long records = 0L;
+        for (long segmentBase : segments()) {
+            if (segmentBase + segmentSize <= from) continue;
+            try (FileChannel segment = FileChannel.open(segmentPath(segmentBase), StandardOpenOption.READ)) {
+                MappedByteBuffer source = segment.map(FileChannel.MapMode.READ_ONLY, 0, segment.size());
+                int offset = (int) Math.max(0L, from - segmentBase);
+                while (offset + Integer.BYTES <= source.limit()) {
+                    int length = source.getInt(offset);
+                    if (length == 0) break;
+                    source.position(offset + Integer.BYTES);
+                    dispatch(segmentBase + offset, source, handler);
+                    offset += Integer.BYTES + length;
+                    records++;
+                }
+            }
+        }
+        return records;
+    }
+
+    private static void dispatch(long position, MappedByteBuffer source, JournalHandler handler) {
+        byte type = source.get();
+        int bookId = source.getInt();
+        switch (type) {
+            case BOOK -> {
+                String baseAsset = getString(source);
+                String quoteAsset = getString(source);
+                handler.book(position, bookId, baseAsset, quoteAsset, MatchingMode.values()[source.get()]);
+            }
+            case ORDER -> {
+                long orderId = source.getLong();
+                OrderSide side = OrderSide.values()[source.get()];
+                long price = source.getLong();
+                long volume = source.getLong();
+                handler.order(position, bookId, orderId, side, price, volume, getString(source));
+            }
+            case FILL -> handler.fill(position, bookId, source.getLong(), source.getLong(), source.getLong(),
+                    source.getLong(), source.getLong());
+            case MODE -> handler.mode(position, bookId, MatchingMode.values()[source.get()]);
+            case SETTLE -> {
+                long[] seqs = new long[source.getInt()];
+                for (int i = 0; i < seqs.length; i++) {
+                    seqs[i] = source.getLong();
+                }
+                handler.settle(position, bookId, seqs);
+            }
+            default -> throw new IllegalStateException("Corrupt journal record type " + type + " at " + position);
+        }
+    }
+
+    public synchronized void truncateBefore(long position) throws IOException {
+        for (long segmentBase : segments()) {
+            if (segmentBase + segmentSize <= position && segmentBase != base) {
+                Files.deleteIfExists(segmentPath(segmentBase));
+            }
+        }
+    }
+
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+}
@@ -0,0 +1,16 @@
+package exchange.journal;
+
+import exchange.constant.MatchingMode;
+import exchange.constant.OrderSide;
+
+public interface JournalHandler {
+    void book(long position, int bookId, String base, String quote, MatchingMode mode);
+
+    void order(long position, int bookId, long orderId, OrderSide side, long price, long volume, String account);
+
+    void fill(long position, int bookId, long bidId, long askId, long price, long volume, long time);
+
+    void mode(long position, int bookId, MatchingMode mode);
+
+    void settle(long position, int bookId, long[] seqs);
+}
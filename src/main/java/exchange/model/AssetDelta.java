@@ -0,0 +1,21 @@
+package exchange.model;
+
+public class AssetDelta {
+    public String accountId;
+    public String assetId;
+    public long amount;
+    public long reserved;
+
+    public AssetDelta(String accountId, String assetId) {
+        this.accountId = accountId;
+        this.assetId = assetId;
+    }
+
+    public int compare(AssetDelta other) {
+        int accountResult = accountId.compareTo(other.accountId);
+        if (accountResult == 0) {
+            return assetId.compareTo(other.assetId);
+        }
+        return accountResult;
+    }
+}
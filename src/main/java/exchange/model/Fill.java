@@ -0,0 +1,17 @@
+package exchange.model;
+
+public class Fill {
+    public Order bid;
+    public Order ask;
+    public long price;
+    public long volume;
+    public long seq;
+    public long time;
+
+    public Fill(Order bid, Order ask, long price, long volume) {
+        this.bid = bid;
+        this.ask = ask;
+        this.price = price;
+        this.volume = volume;
+    }
+}
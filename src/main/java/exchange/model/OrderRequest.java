@@ -0,0 +1,27 @@
+package exchange.model;
+
+import exchange.constant.OrderSide;
+
+public class OrderRequest {
+    public String base;
+    public String quote;
+    public OrderSide side;
+    public long price;
+    public long volume;
+
+    public OrderRequest() {
+
+    }
+
+    public OrderRequest(OrderSide side, long price, long volume) {
+        this.side = side;
+        this.price = price;
+        this.volume = volume;
+    }
+
+    public OrderRequest(String base, String quote, OrderSide side, long price, long volume) {
+        this(side, price, volume);
+        this.base = base;
+        this.quote = quote;
+    }
+}
@@ -1,6 +1,7 @@
 package exchange.model;
 
 public class Tx {
+    public long seq;
     public long time;
     public long price;
     public long volume;
@@ -11,6 +12,11 @@ public class Tx {
         this.volume = volume;
     }
 
+    public Tx(long seq, long time, long price, long volume) {
+        this(time, price, volume);
+        this.seq = seq;
+    }
+
     public int compare(Tx other) {
         return Long.compare(price, other.price);
     }
@@ -5,6 +5,10 @@ import java.util.Random;
 public class PRNG {
     public static Random random = new Random(1234567);
 
+    public static void reseed(long seed) {
+        random.setSeed(seed);
+    }
+
     public static long nextLong() {
         return random.nextLong();
     }
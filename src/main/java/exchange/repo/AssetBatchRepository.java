@@ -0,0 +1,32 @@
+package exchange.repo;
+
+import exchange.model.AssetDelta;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public class AssetBatchRepository {
+    static final String UPSERT_ABSOLUTE = "insert into asset (account_id, asset_id, amount, reserved) values (?, ?, ?, ?) " +
+            "on conflict (account_id, asset_id) do update set amount = excluded.amount, reserved = excluded.reserved";
+    static final String UPSERT_DELTA = "insert into asset (account_id, asset_id, amount, reserved) values (?, ?, ?, ?) " +
+            "on conflict (account_id, asset_id) do update set amount = asset.amount + excluded.amount, " +
+            "reserved = asset.reserved + excluded.reserved";
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    public int[] upsert(List<Object[]> rows) {
+        if (rows.isEmpty()) return new int[0];
+        return jdbcTemplate.batchUpdate(UPSERT_ABSOLUTE, rows);
+    }
+
+    public int[] applyDeltas(List<AssetDelta> deltas) {
+        if (deltas.isEmpty()) return new int[0];
+        return jdbcTemplate.batchUpdate(UPSERT_DELTA, deltas.stream()
+                .map(delta -> new Object[]{delta.accountId, delta.assetId, delta.amount, delta.reserved})
+                .toList());
+    }
+}
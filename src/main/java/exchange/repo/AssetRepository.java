@@ -1,10 +1,22 @@
 package exchange.repo;
 
 import exchange.model.Asset;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
 
 @Repository
 public interface AssetRepository extends CrudRepository<Asset, Asset.AssetKey> {
+    List<Asset> findByIdAccountId(String accountId);
 
+    @Modifying
+    @Transactional
+    @Query("update Asset a set a.reserved = a.reserved + :volume " +
+            "where a.id.accountId = :accountId and a.id.assetId = :assetId and a.amount - a.reserved >= :volume")
+    int tryReserve(@Param("accountId") String accountId, @Param("assetId") String assetId, @Param("volume") long volume);
 }
@@ -1,15 +1,19 @@
 package exchange.service;
 
+import exchange.cache.AccountCache;
 import exchange.model.Account;
 import exchange.model.Asset;
+import exchange.model.AssetDelta;
 import exchange.repo.AccountRepository;
 import exchange.repo.AssetRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 import reactor.core.publisher.Mono;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -21,7 +25,16 @@ public class AccountService {
     @Autowired
     AssetRepository assetRepository;
 
+    @Autowired
+    BalanceLedger ledger;
+
+    @Autowired
+    AccountCache accountCache;
+
     public Optional<Asset> getAssetByName(Account account, String name) {
+        if (ledger.isEnabled()) {
+            return ledger.get(account.getId(), name);
+        }
         Asset.AssetKey key = new Asset.AssetKey();
         key.setAssetId(name);
         key.setAccountId(account.getId());
@@ -29,19 +42,36 @@ public class AccountService {
     }
 
     public Optional<Account> getAccountByName(String name) {
+        if (accountCache.isEnabled()) {
+            return accountCache.get(name, this::loadAccount);
+        }
+        return loadAccount(name);
+    }
+
+    Optional<Account> loadAccount(String name) {
         Optional<Account> result = accountRepository.findById(name);
         if (result.isEmpty()) {
             Account account = new Account();
             account.setId(name);
-            account = accountRepository.save(account);
-            return Optional.of(account);
+            return Optional.of(save(account));
         } else {
             return result;
         }
     }
 
+    public Account save(Account account) {
+        Account saved = accountRepository.save(account);
+        if (accountCache.isEnabled()) {
+            accountCache.invalidate(saved.getId());
+        }
+        return saved;
+    }
+
     @Transactional
     public Asset manipulate(Account account, String assetId, long volume, long reserve) {
+        if (ledger.isEnabled()) {
+            return ledger.apply(account.getId(), assetId, volume, reserve);
+        }
         Optional<Asset> result = getAssetByName(account, assetId);
         if (result.isEmpty()) {
             Asset asset = new Asset();
@@ -65,6 +95,28 @@ public class AccountService {
         return manipulate(account, assetId, 0L, volume);
     }
 
+    public boolean tryReserve(Account account, String assetId, long volume) {
+        if (volume <= 0L) throw new IllegalArgumentException("Reserved volume must be positive, got " + volume);
+        if (ledger.isEnabled()) {
+            return ledger.tryReserve(account.getId(), assetId, volume);
+        }
+        return assetRepository.tryReserve(account.getId(), assetId, volume) == 1;
+    }
+
+    @Transactional
+    public AssetDelta reserveAll(List<AssetDelta> reservations) {
+        if (ledger.isEnabled()) {
+            return ledger.tryReserveAll(reservations);
+        }
+        for (AssetDelta reservation : reservations) {
+            if (assetRepository.tryReserve(reservation.accountId, reservation.assetId, reservation.reserved) != 1) {
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                return reservation;
+            }
+        }
+        return null;
+    }
+
     public Asset transfer(Account account, String assetId, long volume) {
         return manipulate(account, assetId, volume, 0L);
     }
@@ -77,8 +129,11 @@ public class AccountService {
     }
 
     public Map<String, Long> getPublicAssets(Account account) {
+        if (ledger.isEnabled()) {
+            return ledger.publicAssets(account.getId());
+        }
         Map<String, Long> result = new HashMap<>();
-        for (Asset asset : account.getAssets()) {
+        for (Asset asset : assetRepository.findByIdAccountId(account.getId())) {
             result.put(asset.getId().getAssetId(), asset.getAmount() - asset.getReserved());
         }
         return result;
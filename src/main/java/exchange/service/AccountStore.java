@@ -0,0 +1,38 @@
+package exchange.service;
+
+import exchange.model.Account;
+import exchange.model.AssetDelta;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Account and balance operations for the reactive request path. None of these may block the
+ * subscribing thread; pick the implementation with exchange.persistence (jpa or r2dbc).
+ */
+public interface AccountStore {
+    Mono<Account> getAccount(String name);
+
+    Mono<Void> apply(Account account, String assetId, long volume, long reserve);
+
+    Mono<Boolean> tryReserve(Account account, String assetId, long volume);
+
+    /**
+     * Reserves all or none of the given amounts. Emits the first reservation that could not be
+     * covered, or completes empty once every one of them is taken.
+     */
+    Mono<AssetDelta> reserveAll(List<AssetDelta> reservations);
+
+    Mono<Map<String, Long>> getPublicAssets(Account account);
+
+    Mono<Void> settle(List<AssetDelta> deltas);
+
+    /**
+     * Completes once everything settled so far survives a crash. Stores that write through complete
+     * at once; a write-behind ledger completes after its next flush.
+     */
+    default Mono<Void> durable() {
+        return Mono.empty();
+    }
+}
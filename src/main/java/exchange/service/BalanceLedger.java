@@ -0,0 +1,296 @@
+package exchange.service;
+
+import exchange.model.Asset;
+import exchange.model.AssetDelta;
+import exchange.repo.AssetBatchRepository;
+import exchange.repo.AssetRepository;
+import exchange.util.LongIntHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authoritative in-memory balances keyed by (account, asset). Rows live in parallel primitive
+ * arrays indexed by slot; changed slots are queued and written back to the asset table in batches.
+ */
+@Service
+@Slf4j
+public class BalanceLedger {
+    @Value("${exchange.ledger.enabled:false}")
+    boolean enabled = false;
+
+    @Value("${exchange.ledger.flush-interval-ms:100}")
+    long flushIntervalMs = 100L;
+
+    @Value("${exchange.ledger.flush-batch-size:1000}")
+    int flushBatchSize = 1000;
+
+    @Autowired
+    AssetRepository assetRepository;
+
+    @Autowired
+    AssetBatchRepository assetBatchRepository;
+
+    final Map<String, Integer> accountIndex = new HashMap<>();
+    final Map<String, Integer> assetIndex = new HashMap<>();
+    final List<String> accountNames = new ArrayList<>();
+    final List<String> assetNames = new ArrayList<>();
+    final LongIntHashMap slots = new LongIntHashMap(1024);
+
+    int[] accountHead = emptyHeads(64);
+    int[] slotAccount = new int[1024];
+    int[] slotAsset = new int[1024];
+    int[] slotNext = new int[1024];
+    long[] amount = new long[1024];
+    long[] reserved = new long[1024];
+    boolean[] dirty = new boolean[1024];
+    int[] dirtyQueue = new int[1024];
+    int dirtyCount = 0;
+    int slotCount = 0;
+    long version = 0L;
+    volatile long persisted = 0L;
+    final Sinks.Many<Long> persistedVersions = Sinks.many().replay().latest();
+
+    ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        load(assetRepository.findAll());
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ledger-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flusher == null) return;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        while (flush() > 0) ;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    synchronized void load(Iterable<Asset> assets) {
+        for (Asset asset : assets) {
+            int slot = slot(asset.getId().getAccountId(), asset.getId().getAssetId());
+            amount[slot] = asset.getAmount();
+            reserved[slot] = asset.getReserved();
+        }
+        log.info("Ledger loaded {} balances", slotCount);
+    }
+
+    public synchronized Asset apply(String accountId, String assetId, long volume, long reserve) {
+        int slot = slot(accountId, assetId);
+        amount[slot] += volume;
+        reserved[slot] += reserve;
+        markDirty(slot);
+        return toAsset(slot);
+    }
+
+    public synchronized boolean tryReserve(String accountId, String assetId, long volume) {
+        if (volume <= 0L) throw new IllegalArgumentException("Reserved volume must be positive, got " + volume);
+        int slot = find(accountId, assetId);
+        if (slot == LongIntHashMap.MISSING || amount[slot] - reserved[slot] < volume) return false;
+        reserved[slot] += volume;
+        markDirty(slot);
+        return true;
+    }
+
+    public synchronized AssetDelta tryReserveAll(List<AssetDelta> reservations) {
+        for (AssetDelta reservation : reservations) {
+            int slot = find(reservation.accountId, reservation.assetId);
+            if (slot == LongIntHashMap.MISSING || amount[slot] - reserved[slot] < reservation.reserved) return reservation;
+        }
+        for (AssetDelta reservation : reservations) {
+            int slot = find(reservation.accountId, reservation.assetId);
+            reserved[slot] += reservation.reserved;
+            markDirty(slot);
+        }
+        return null;
+    }
+
+    public synchronized void applyAll(List<AssetDelta> deltas) {
+        for (AssetDelta delta : deltas) {
+            int slot = slot(delta.accountId, delta.assetId);
+            amount[slot] += delta.amount;
+            reserved[slot] += delta.reserved;
+            markDirty(slot);
+        }
+    }
+
+    public synchronized Optional<Asset> get(String accountId, String assetId) {
+        int slot = find(accountId, assetId);
+        if (slot == LongIntHashMap.MISSING) return Optional.empty();
+        return Optional.of(toAsset(slot));
+    }
+
+    public synchronized Map<String, Long> publicAssets(String accountId) {
+        Map<String, Long> result = new HashMap<>();
+        Integer account = accountIndex.get(accountId);
+        if (account == null) return result;
+        for (int slot = accountHead[account]; slot != -1; slot = slotNext[slot]) {
+            result.put(assetNames.get(slotAsset[slot]), amount[slot] - reserved[slot]);
+        }
+        return result;
+    }
+
+    public int flush() {
+        List<Object[]> batch;
+        long drained;
+        synchronized (this) {
+            batch = drainDirty();
+            drained = dirtyCount == 0 ? version : -1L;
+        }
+        if (!batch.isEmpty()) {
+            try {
+                assetBatchRepository.upsert(batch);
+            } catch (RuntimeException ex) {
+                requeue(batch);
+                throw ex;
+            }
+        }
+        if (drained > persisted) {
+            persisted = drained;
+            persistedVersions.tryEmitNext(drained);
+        }
+        return batch.size();
+    }
+
+    /**
+     * Completes once every change made before the call has been written back to the asset table.
+     */
+    public Mono<Void> flushed() {
+        long target;
+        synchronized (this) {
+            target = version;
+        }
+        if (target <= persisted) return Mono.empty();
+        return persistedVersions.asFlux().filter(flushedVersion -> flushedVersion >= target).next().then();
+    }
+
+    void flushQuietly() {
+        try {
+            while (flush() >= flushBatchSize) ;
+        } catch (RuntimeException ex) {
+            log.error("Ledger flush failed, will retry", ex);
+        }
+    }
+
+    synchronized List<Object[]> drainDirty() {
+        int count = Math.min(dirtyCount, flushBatchSize);
+        List<Object[]> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int slot = dirtyQueue[i];
+            dirty[slot] = false;
+            batch.add(new Object[]{
+                    accountNames.get(slotAccount[slot]), assetNames.get(slotAsset[slot]), amount[slot], reserved[slot]
+            });
+        }
+        System.arraycopy(dirtyQueue, count, dirtyQueue, 0, dirtyCount - count);
+        dirtyCount -= count;
+        return batch;
+    }
+
+    synchronized void requeue(List<Object[]> batch) {
+        for (Object[] row : batch) {
+            markDirty(find((String) row[0], (String) row[1]));
+        }
+    }
+
+    int find(String accountId, String assetId) {
+        Integer account = accountIndex.get(accountId);
+        Integer asset = assetIndex.get(assetId);
+        if (account == null || asset == null) return LongIntHashMap.MISSING;
+        return slots.get(key(account, asset));
+    }
+
+    int slot(String accountId, String assetId) {
+        int account = intern(accountId, accountIndex, accountNames);
+        int asset = intern(assetId, assetIndex, assetNames);
+        long key = key(account, asset);
+        int slot = slots.get(key);
+        if (slot != LongIntHashMap.MISSING) return slot;
+        slot = slotCount++;
+        if (slot == amount.length) growSlots();
+        if (account >= accountHead.length) {
+            int from = accountHead.length;
+            accountHead = Arrays.copyOf(accountHead, from * 2);
+            Arrays.fill(accountHead, from, accountHead.length, -1);
+        }
+        slotAccount[slot] = account;
+        slotAsset[slot] = asset;
+        slotNext[slot] = accountHead[account];
+        accountHead[account] = slot;
+        slots.put(key, slot);
+        return slot;
+    }
+
+    static int[] emptyHeads(int size) {
+        int[] heads = new int[size];
+        Arrays.fill(heads, -1);
+        return heads;
+    }
+
+    static int intern(String name, Map<String, Integer> index, List<String> names) {
+        Integer id = index.get(name);
+        if (id != null) return id;
+        id = names.size();
+        names.add(name);
+        index.put(name, id);
+        return id;
+    }
+
+    static long key(int account, int asset) {
+        return ((long) account << 32) | (asset & 0xFFFFFFFFL);
+    }
+
+    void markDirty(int slot) {
+        version++;
+        if (dirty[slot]) return;
+        dirty[slot] = true;
+        if (dirtyCount == dirtyQueue.length) dirtyQueue = Arrays.copyOf(dirtyQueue, dirtyCount * 2);
+        dirtyQueue[dirtyCount++] = slot;
+    }
+
+    void growSlots() {
+        int capacity = amount.length * 2;
+        slotAccount = Arrays.copyOf(slotAccount, capacity);
+        slotAsset = Arrays.copyOf(slotAsset, capacity);
+        slotNext = Arrays.copyOf(slotNext, capacity);
+        amount = Arrays.copyOf(amount, capacity);
+        reserved = Arrays.copyOf(reserved, capacity);
+        dirty = Arrays.copyOf(dirty, capacity);
+    }
+
+    Asset toAsset(int slot) {
+        Asset.AssetKey key = new Asset.AssetKey();
+        key.setAccountId(accountNames.get(slotAccount[slot]));
+        key.setAssetId(assetNames.get(slotAsset[slot]));
+        Asset asset = new Asset();
+        asset.setId(key);
+        asset.setAmount(amount[slot]);
+        asset.setReserved(reserved[slot]);
+        return asset;
+    }
+}
@@ -0,0 +1,79 @@
+package exchange.service;
+
+import exchange.model.Account;
+import exchange.model.AssetDelta;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs the blocking JPA/JDBC services on a bounded elastic scheduler so callers never wait on
+ * the database from an event loop thread.
+ */
+@Service
+@ConditionalOnProperty(name = "exchange.persistence", havingValue = "jpa", matchIfMissing = true)
+public class JpaAccountStore implements AccountStore {
+    final AccountService accountService;
+    final SettlementService settlementService;
+    final Scheduler scheduler;
+
+    @Autowired
+    public JpaAccountStore(AccountService accountService, SettlementService settlementService) {
+        this(accountService, settlementService, Schedulers.boundedElastic());
+    }
+
+    public JpaAccountStore(AccountService accountService, SettlementService settlementService, Scheduler scheduler) {
+        this.accountService = accountService;
+        this.settlementService = settlementService;
+        this.scheduler = scheduler;
+    }
+
+    <T> Mono<T> offload(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(scheduler);
+    }
+
+    @Override
+    public Mono<Account> getAccount(String name) {
+        return offload(() -> accountService.getAccountByName(name).orElse(null));
+    }
+
+    @Override
+    public Mono<Void> apply(Account account, String assetId, long volume, long reserve) {
+        return offload(() -> accountService.manipulate(account, assetId, volume, reserve)).then();
+    }
+
+    @Override
+    public Mono<Boolean> tryReserve(Account account, String assetId, long volume) {
+        return offload(() -> accountService.tryReserve(account, assetId, volume));
+    }
+
+    @Override
+    public Mono<AssetDelta> reserveAll(List<AssetDelta> reservations) {
+        return offload(() -> accountService.reserveAll(reservations));
+    }
+
+    @Override
+    public Mono<Map<String, Long>> getPublicAssets(Account account) {
+        return offload(() -> accountService.getPublicAssets(account));
+    }
+
+    @Override
+    public Mono<Void> settle(List<AssetDelta> deltas) {
+        return offload(() -> {
+            settlementService.apply(deltas);
+            return deltas;
+        }).then();
+    }
+
+    @Override
+    public Mono<Void> durable() {
+        return settlementService.durable();
+    }
+}
@@ -0,0 +1,174 @@
+package exchange.service;
+
+import exchange.model.Account;
+import exchange.model.AssetDelta;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Talks to the account and asset tables through R2DBC, so no thread ever parks on a query.
+ * Balance changes are a single insert-or-add upsert, and reservations are a single conditional
+ * update. A settlement sends all of its deltas as one batched statement in one transaction.
+ * When the balance ledger is enabled it stays authoritative for balances.
+ */
+@Service
+@ConditionalOnProperty(name = "exchange.persistence", havingValue = "r2dbc")
+public class R2dbcAccountStore implements AccountStore {
+    static final String SELECT_ACCOUNT = "select account_id from account where account_id = :account";
+    static final String INSERT_ACCOUNT = "insert into account (account_id) values (:account)";
+    static final String UPSERT_DELTA = "insert into asset (account_id, asset_id, amount, reserved) values ($1, $2, $3, $4) " +
+            "on conflict (account_id, asset_id) do update set amount = asset.amount + excluded.amount, " +
+            "reserved = asset.reserved + excluded.reserved";
+    static final String RESERVE_ASSET = "update asset set reserved = reserved + :volume " +
+            "where account_id = :account and asset_id = :asset and amount - reserved >= :volume";
+    static final String SELECT_ASSETS = "select asset_id, amount - reserved as available from asset where account_id = :account";
+
+    final DatabaseClient databaseClient;
+    final TransactionalOperator transactions;
+    final BalanceLedger ledger;
+    String upsertDelta = UPSERT_DELTA;
+
+    final ConnectionFactory connectionFactory;
+
+    @Autowired
+    public R2dbcAccountStore(@Value("${exchange.r2dbc.url}") String url,
+                             @Value("${exchange.r2dbc.username:}") String username,
+                             @Value("${exchange.r2dbc.password:}") String password,
+                             BalanceLedger ledger) {
+        this(ConnectionFactories.get(ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build()), ledger);
+    }
+
+    public R2dbcAccountStore(ConnectionFactory connectionFactory, BalanceLedger ledger) {
+        this.connectionFactory = connectionFactory;
+        this.databaseClient = DatabaseClient.create(connectionFactory);
+        this.transactions = TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+        this.ledger = ledger;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (connectionFactory instanceof Disposable pool) {
+            pool.dispose();
+        }
+    }
+
+    @Override
+    public Mono<Account> getAccount(String name) {
+        return databaseClient.sql(SELECT_ACCOUNT)
+                .bind("account", name)
+                .map(row -> row.get("account_id", String.class))
+                .first()
+                .switchIfEmpty(databaseClient.sql(INSERT_ACCOUNT)
+                        .bind("account", name)
+                        .fetch()
+                        .rowsUpdated()
+                        .thenReturn(name)
+                        .onErrorReturn(DataIntegrityViolationException.class, name))
+                .map(id -> {
+                    Account account = new Account();
+                    account.setId(id);
+                    return account;
+                });
+    }
+
+    @Override
+    public Mono<Void> apply(Account account, String assetId, long volume, long reserve) {
+        if (ledger.isEnabled()) {
+            return Mono.fromRunnable(() -> ledger.apply(account.getId(), assetId, volume, reserve));
+        }
+        AssetDelta delta = new AssetDelta(account.getId(), assetId);
+        delta.amount = volume;
+        delta.reserved = reserve;
+        return upsert(List.of(delta));
+    }
+
+    @Override
+    public Mono<Boolean> tryReserve(Account account, String assetId, long volume) {
+        if (volume <= 0L) return Mono.error(new IllegalArgumentException("Reserved volume must be positive, got " + volume));
+        if (ledger.isEnabled()) {
+            return Mono.fromCallable(() -> ledger.tryReserve(account.getId(), assetId, volume));
+        }
+        return reserve(account.getId(), assetId, volume);
+    }
+
+    @Override
+    public Mono<AssetDelta> reserveAll(List<AssetDelta> reservations) {
+        if (ledger.isEnabled()) {
+            return Mono.fromCallable(() -> ledger.tryReserveAll(reservations));
+        }
+        return transactions.execute(status -> Flux.fromIterable(reservations)
+                        .concatMap(reservation -> reserve(reservation.accountId, reservation.assetId, reservation.reserved)
+                                .filter(reserved -> !reserved)
+                                .map(reserved -> reservation))
+                        .next()
+                        .doOnNext(shortfall -> status.setRollbackOnly()))
+                .next();
+    }
+
+    Mono<Boolean> reserve(String accountId, String assetId, long volume) {
+        return databaseClient.sql(RESERVE_ASSET)
+                .bind("account", accountId)
+                .bind("asset", assetId)
+                .bind("volume", volume)
+                .fetch()
+                .rowsUpdated()
+                .map(rows -> rows == 1);
+    }
+
+    @Override
+    public Mono<Map<String, Long>> getPublicAssets(Account account) {
+        if (ledger.isEnabled()) {
+            return Mono.fromCallable(() -> ledger.publicAssets(account.getId()));
+        }
+        return databaseClient.sql(SELECT_ASSETS)
+                .bind("account", account.getId())
+                .map(row -> Map.entry(row.get("asset_id", String.class), row.get("available", Long.class)))
+                .all()
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    @Override
+    public Mono<Void> settle(List<AssetDelta> deltas) {
+        if (deltas.isEmpty()) return Mono.empty();
+        if (ledger.isEnabled()) {
+            return Mono.fromRunnable(() -> ledger.applyAll(deltas));
+        }
+        return upsert(deltas).as(transactions::transactional);
+    }
+
+    Mono<Void> upsert(List<AssetDelta> deltas) {
+        return databaseClient.inConnectionMany(connection -> {
+            Statement statement = connection.createStatement(upsertDelta);
+            for (int i = 0; i < deltas.size(); i++) {
+                AssetDelta delta = deltas.get(i);
+                if (i > 0) statement.add();
+                statement.bind(0, delta.accountId)
+                        .bind(1, delta.assetId)
+                        .bind(2, delta.amount)
+                        .bind(3, delta.reserved);
+            }
+            return Flux.from(statement.execute()).flatMap(Result::getRowsUpdated);
+        }).then();
+    }
+}
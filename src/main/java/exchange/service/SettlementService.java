@@ -0,0 +1,34 @@
+package exchange.service;
+
+import exchange.model.AssetDelta;
+import exchange.repo.AssetBatchRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@Service
+public class SettlementService {
+    @Autowired
+    BalanceLedger ledger;
+
+    @Autowired
+    AssetBatchRepository assetBatchRepository;
+
+    @Transactional
+    public void apply(List<AssetDelta> deltas) {
+        if (deltas.isEmpty()) return;
+        if (ledger.isEnabled()) {
+            ledger.applyAll(deltas);
+        } else {
+            assetBatchRepository.applyDeltas(deltas);
+        }
+    }
+
+    public Mono<Void> durable() {
+        if (ledger == null || !ledger.isEnabled()) return Mono.empty();
+        return ledger.flushed();
+    }
+}
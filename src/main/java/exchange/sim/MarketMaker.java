@@ -0,0 +1,26 @@
+package exchange.sim;
+
+import exchange.constant.OrderSide;
+import exchange.core.OrderBook;
+import exchange.model.Account;
+import exchange.model.OrderRequest;
+import exchange.prng.PRNG;
+
+public class MarketMaker extends SimTrader {
+    final int spread;
+
+    public MarketMaker(int id, Account account, OrderBook book, double ratePerSecond, int spread) {
+        super(id, account, book, ratePerSecond);
+        this.spread = Math.max(1, spread);
+    }
+
+    @Override
+    OrderRequest next(long referencePrice) {
+        long offset = PRNG.nextInt(1, spread + 1);
+        long volume = PRNG.nextLong(1, 20);
+        if (PRNG.nextBoolean()) {
+            return new OrderRequest(OrderSide.BID, Math.max(1L, referencePrice - offset), volume);
+        }
+        return new OrderRequest(OrderSide.ASK, referencePrice + offset, volume);
+    }
+}
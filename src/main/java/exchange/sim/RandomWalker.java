@@ -0,0 +1,23 @@
+package exchange.sim;
+
+import exchange.constant.OrderSide;
+import exchange.core.OrderBook;
+import exchange.model.Account;
+import exchange.model.OrderRequest;
+import exchange.prng.PRNG;
+
+public class RandomWalker extends SimTrader {
+    long price;
+
+    public RandomWalker(int id, Account account, OrderBook book, double ratePerSecond) {
+        super(id, account, book, ratePerSecond);
+    }
+
+    @Override
+    OrderRequest next(long referencePrice) {
+        if (price == 0L) price = referencePrice;
+        price = Math.max(1L, price + PRNG.nextInt(-2, 3));
+        OrderSide side = PRNG.nextBoolean() ? OrderSide.BID : OrderSide.ASK;
+        return new OrderRequest(side, price, PRNG.nextLong(1, 10));
+    }
+}
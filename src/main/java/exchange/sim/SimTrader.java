@@ -0,0 +1,38 @@
+package exchange.sim;
+
+import exchange.core.OrderBook;
+import exchange.model.Account;
+import exchange.model.OrderRequest;
+
+public abstract class SimTrader {
+    final int id;
+    final Account account;
+    final OrderBook book;
+    final double ratePerSecond;
+
+    protected SimTrader(int id, Account account, OrderBook book, double ratePerSecond) {
+        this.id = id;
+        this.account = account;
+        this.book = book;
+        this.ratePerSecond = ratePerSecond;
+    }
+
+    abstract OrderRequest next(long referencePrice);
+
+    long reference(long basePrice) {
+        long last = book.getLastPrice();
+        return last > 0 ? last : basePrice;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Account getAccount() {
+        return account;
+    }
+
+    public OrderBook getBook() {
+        return book;
+    }
+}
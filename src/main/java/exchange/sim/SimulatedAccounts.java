@@ -0,0 +1,61 @@
+package exchange.sim;
+
+import exchange.model.Account;
+import exchange.model.Asset;
+import exchange.model.AssetDelta;
+import exchange.service.AccountService;
+import exchange.service.BalanceLedger;
+import exchange.service.SettlementService;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Accounts that exist only in memory, for markets that must never touch the database. Every name
+ * is a valid account and balances live in a private ledger.
+ */
+public class SimulatedAccounts extends AccountService {
+    final BalanceLedger balances = new BalanceLedger();
+
+    @Override
+    public Optional<Asset> getAssetByName(Account account, String name) {
+        return balances.get(account.getId(), name);
+    }
+
+    @Override
+    public Optional<Account> getAccountByName(String name) {
+        Account account = new Account();
+        account.setId(name);
+        return Optional.of(account);
+    }
+
+    @Override
+    public Asset manipulate(Account account, String assetId, long volume, long reserve) {
+        return balances.apply(account.getId(), assetId, volume, reserve);
+    }
+
+    @Override
+    public boolean tryReserve(Account account, String assetId, long volume) {
+        return balances.tryReserve(account.getId(), assetId, volume);
+    }
+
+    @Override
+    public AssetDelta reserveAll(List<AssetDelta> reservations) {
+        return balances.tryReserveAll(reservations);
+    }
+
+    @Override
+    public Map<String, Long> getPublicAssets(Account account) {
+        return balances.publicAssets(account.getId());
+    }
+
+    public SettlementService settlement() {
+        return new SettlementService() {
+            @Override
+            public void apply(List<AssetDelta> deltas) {
+                balances.applyAll(deltas);
+            }
+        };
+    }
+}
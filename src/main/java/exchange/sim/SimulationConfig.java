@@ -0,0 +1,21 @@
+package exchange.sim;
+
+import exchange.constant.MatchingMode;
+
+public class SimulationConfig {
+    public long seed = 1234567L;
+    public int books = 4;
+    public int makers = 8;
+    public int takers = 8;
+    public int walkers = 4;
+    public double makerRate = 200.0;
+    public double takerRate = 50.0;
+    public double walkerRate = 20.0;
+    public int spread = 5;
+    public long basePrice = 1000L;
+    public long funding = 1_000_000_000_000L;
+    public long durationMs = 10_000L;
+    public long tickIntervalMs = 100L;
+    public MatchingMode mode = MatchingMode.TICK;
+    public boolean realtime = false;
+}
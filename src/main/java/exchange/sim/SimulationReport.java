@@ -0,0 +1,19 @@
+package exchange.sim;
+
+import java.util.Map;
+
+public class SimulationReport {
+    public long seed;
+    public int traders;
+    public int books;
+    public long orders;
+    public long rejected;
+    public long trades;
+    public long ticks;
+    public long simulatedMs;
+    public long elapsedMs;
+    public double ordersPerSecond;
+    public Map<String, Double> orderLatencyMicros;
+    public Map<String, Double> tickLatencyMicros;
+    public String checksum;
+}
@@ -0,0 +1,201 @@
+package exchange.sim;
+
+import exchange.core.AssetManager;
+import exchange.core.OrderBook;
+import exchange.core.TradeHistory;
+import exchange.model.Account;
+import exchange.model.Order;
+import exchange.model.OrderRequest;
+import exchange.prng.PRNG;
+import exchange.strategy.StrategyScheduler;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives simulated traders against {@link AssetManager} on a virtual clock. Arrivals are Poisson
+ * per trader and processed one at a time in (time, trader) order, so with the same seed every run
+ * places the same orders and produces the same trades and checksum. Each run gets a private offline
+ * market with in-memory accounts, so it neither leaks into nor reads from the live exchange.
+ */
+@Service
+@Slf4j
+public class Simulator {
+    static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+    static final String[] PERCENTILE_LABELS = {"p50", "p90", "p99", "p99.9"};
+
+    final AtomicInteger runs = new AtomicInteger(0);
+
+    static class Arrival {
+        long time;
+        final int trader;
+
+        Arrival(long time, int trader) {
+            this.time = time;
+            this.trader = trader;
+        }
+    }
+
+    public synchronized SimulationReport run(SimulationConfig config) {
+        PRNG.reseed(config.seed);
+        int run = runs.incrementAndGet();
+        SimulatedAccounts accounts = new SimulatedAccounts();
+        AssetManager market = AssetManager.offline(accounts, accounts.settlement(), config.mode, new StrategyScheduler());
+        try {
+            return run(config, run, market);
+        } finally {
+            market.stop();
+        }
+    }
+
+    SimulationReport run(SimulationConfig config, int run, AssetManager market) {
+        List<OrderBook> books = new ArrayList<>(config.books);
+        for (int i = 0; i < config.books; i++) {
+            books.add(market.getOrderBook("SIM" + i, "USD").block());
+        }
+        List<SimTrader> traders = createTraders(config, market, books);
+
+        PriorityQueue<Arrival> arrivals = new PriorityQueue<>(
+                Comparator.<Arrival>comparingLong(a -> a.time).thenComparingInt(a -> a.trader));
+        for (SimTrader trader : traders) {
+            arrivals.add(new Arrival(interval(trader.ratePerSecond), trader.id));
+        }
+
+        Histogram orderLatency = new Histogram(3);
+        Histogram tickLatency = new Histogram(3);
+        long end = config.durationMs * 1000L;
+        long tickInterval = Math.max(1L, config.tickIntervalMs) * 1000L;
+        long nextTick = tickInterval;
+        long orders = 0L;
+        long rejected = 0L;
+        long ticks = 0L;
+        long checksum = config.seed;
+        long start = System.nanoTime();
+
+        while (!arrivals.isEmpty() && arrivals.peek().time <= end) {
+            Arrival arrival = arrivals.poll();
+            for (; nextTick <= arrival.time; nextTick += tickInterval) {
+                pace(config, start, nextTick);
+                tick(market, tickLatency);
+                ticks++;
+            }
+            pace(config, start, arrival.time);
+            SimTrader trader = traders.get(arrival.trader);
+            OrderRequest intent = trader.next(trader.reference(config.basePrice));
+            Order order = new Order(intent.price, intent.volume, trader.account);
+            long begin = System.nanoTime();
+            boolean accepted = true;
+            try {
+                market.placeOrder(trader.book, order, intent.side).block();
+                orders++;
+            } catch (RuntimeException ex) {
+                accepted = false;
+                rejected++;
+            }
+            orderLatency.recordValue(System.nanoTime() - begin);
+            checksum = mix(checksum, trader.id, intent.side.ordinal(), intent.price, intent.volume, accepted ? 1 : 0);
+            arrival.time += interval(trader.ratePerSecond);
+            arrivals.add(arrival);
+        }
+        for (; nextTick <= end; nextTick += tickInterval) {
+            pace(config, start, nextTick);
+            tick(market, tickLatency);
+            ticks++;
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        long trades = 0L;
+        for (OrderBook book : books) {
+            TradeHistory history = book.getTrades();
+            long size = history.size();
+            trades += size;
+            checksum = mix(checksum, size);
+            for (long seq = 0; seq < size; seq++) {
+                checksum = mix(checksum, history.getPrice(seq), history.getVolume(seq));
+            }
+            for (Map.Entry<Long, Long> level : book.getBids().entrySet()) {
+                checksum = mix(checksum, level.getKey(), level.getValue());
+            }
+            for (Map.Entry<Long, Long> level : book.getAsks().entrySet()) {
+                checksum = mix(checksum, level.getKey(), level.getValue());
+            }
+        }
+
+        SimulationReport report = new SimulationReport();
+        report.seed = config.seed;
+        report.traders = traders.size();
+        report.books = books.size();
+        report.orders = orders;
+        report.rejected = rejected;
+        report.trades = trades;
+        report.ticks = ticks;
+        report.simulatedMs = config.durationMs;
+        report.elapsedMs = elapsedNanos / 1_000_000L;
+        report.ordersPerSecond = elapsedNanos == 0 ? 0.0 : (orders + rejected) * 1e9 / elapsedNanos;
+        report.orderLatencyMicros = percentiles(orderLatency);
+        report.tickLatencyMicros = percentiles(tickLatency);
+        report.checksum = Long.toHexString(checksum);
+        log.info("Simulation run {} with seed {}: {} orders, {} rejected, {} trades in {} ms, checksum {}",
+                run, config.seed, orders, rejected, trades, report.elapsedMs, report.checksum);
+        return report;
+    }
+
+    List<SimTrader> createTraders(SimulationConfig config, AssetManager market, List<OrderBook> books) {
+        List<SimTrader> traders = new ArrayList<>();
+        int population = config.makers + config.takers + config.walkers;
+        for (int id = 0; id < population; id++) {
+            Account account = market.getAccount("sim-" + id).block();
+            OrderBook book = books.get(id % books.size());
+            market.transferTo(account, book.getLeft(), config.funding, "simulation");
+            market.transferTo(account, book.getRight(), config.funding, "simulation");
+            if (id < config.makers) {
+                traders.add(new MarketMaker(id, account, book, config.makerRate, config.spread));
+            } else if (id < config.makers + config.takers) {
+                traders.add(new Taker(id, account, book, config.takerRate));
+            } else {
+                traders.add(new RandomWalker(id, account, book, config.walkerRate));
+            }
+        }
+        return traders;
+    }
+
+    void tick(AssetManager market, Histogram latency) {
+        long begin = System.nanoTime();
+        market.advance().block();
+        latency.recordValue(System.nanoTime() - begin);
+    }
+
+    static long interval(double ratePerSecond) {
+        return 1L + (long) (-Math.log(1.0 - PRNG.nextDouble()) / ratePerSecond * 1_000_000.0);
+    }
+
+    static void pace(SimulationConfig config, long start, long simulatedMicros) {
+        if (!config.realtime) return;
+        long due = start + simulatedMicros * 1000L;
+        for (long now = System.nanoTime(); now < due; now = System.nanoTime()) {
+            LockSupport.parkNanos(due - now);
+        }
+    }
+
+    static long mix(long checksum, long... values) {
+        for (long value : values) {
+            checksum = (checksum ^ value) * 0x100000001b3L;
+            checksum ^= checksum >>> 29;
+        }
+        return checksum;
+    }
+
+    static Map<String, Double> percentiles(Histogram histogram) {
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            result.put(PERCENTILE_LABELS[i], histogram.getValueAtPercentile(PERCENTILES[i]) / 1000.0);
+        }
+        result.put("max", histogram.getMaxValue() / 1000.0);
+        result.put("mean", histogram.getMean() / 1000.0);
+        return result;
+    }
+}
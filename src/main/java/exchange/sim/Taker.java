@@ -0,0 +1,25 @@
+package exchange.sim;
+
+import exchange.constant.OrderSide;
+import exchange.core.OrderBook;
+import exchange.model.Account;
+import exchange.model.Order;
+import exchange.model.OrderRequest;
+import exchange.prng.PRNG;
+
+public class Taker extends SimTrader {
+    public Taker(int id, Account account, OrderBook book, double ratePerSecond) {
+        super(id, account, book, ratePerSecond);
+    }
+
+    @Override
+    OrderRequest next(long referencePrice) {
+        long volume = PRNG.nextLong(1, 10);
+        if (PRNG.nextBoolean()) {
+            Order ask = book.getTopAsk();
+            return new OrderRequest(OrderSide.BID, ask != null ? ask.getPrice() : referencePrice + 1, volume);
+        }
+        Order bid = book.getTopBid();
+        return new OrderRequest(OrderSide.ASK, bid != null ? bid.getPrice() : Math.max(1L, referencePrice - 1), volume);
+    }
+}
@@ -0,0 +1,72 @@
+package exchange.strategy;
+
+import exchange.core.OrderBook;
+import exchange.model.Account;
+import exchange.vm.Script;
+
+public class Strategy {
+    final long id;
+    final Account account;
+    final OrderBook book;
+    final Script script;
+    final StrategyContext context;
+    volatile long runs = 0L;
+    volatile long failures = 0L;
+    volatile long ordersQueued = 0L;
+    volatile long ordersRejected = 0L;
+    volatile Integer lastResult;
+    volatile int lastInstructions;
+    volatile String lastError;
+
+    public Strategy(long id, Account account, OrderBook book, Script script, StrategyContext context) {
+        this.id = id;
+        this.account = account;
+        this.book = book;
+        this.script = script;
+        this.context = context;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getAccount() {
+        return account.getId();
+    }
+
+    public String getBook() {
+        return book.getName();
+    }
+
+    public int getMaxInstructions() {
+        return script.getMaxInstructions();
+    }
+
+    public long getRuns() {
+        return runs;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getOrdersQueued() {
+        return ordersQueued;
+    }
+
+    public long getOrdersRejected() {
+        return ordersRejected;
+    }
+
+    public Integer getLastResult() {
+        return lastResult;
+    }
+
+    public int getLastInstructions() {
+        return lastInstructions;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+}
@@ -0,0 +1,69 @@
+package exchange.strategy;
+
+import exchange.constant.OrderSide;
+import exchange.model.OrderRequest;
+import exchange.vm.MarketContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class StrategyContext implements MarketContext {
+    final MarketContext market;
+    final int maxOrders;
+    final List<OrderRequest> orders = new ArrayList<>();
+
+    public StrategyContext(MarketContext market, int maxOrders) {
+        this.market = market;
+        this.maxOrders = maxOrders;
+    }
+
+    void reset() {
+        orders.clear();
+    }
+
+    boolean queue(OrderSide side, long price, long volume) {
+        if (price <= 0 || volume <= 0 || orders.size() >= maxOrders) return false;
+        orders.add(new OrderRequest(side, price, volume));
+        return true;
+    }
+
+    @Override
+    public boolean buy(long price, long volume) {
+        return queue(OrderSide.BID, price, volume);
+    }
+
+    @Override
+    public boolean sell(long price, long volume) {
+        return queue(OrderSide.ASK, price, volume);
+    }
+
+    @Override
+    public long read(int back) {
+        return market.read(back);
+    }
+
+    @Override
+    public long mean(int window) {
+        return market.mean(window);
+    }
+
+    @Override
+    public long median(int window) {
+        return market.median(window);
+    }
+
+    @Override
+    public long std(int window) {
+        return market.std(window);
+    }
+
+    @Override
+    public long min(int window) {
+        return market.min(window);
+    }
+
+    @Override
+    public long max(int window) {
+        return market.max(window);
+    }
+}
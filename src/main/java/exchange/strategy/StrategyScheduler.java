@@ -0,0 +1,162 @@
+package exchange.strategy;
+
+import exchange.core.AssetManager;
+import exchange.core.OrderBook;
+import exchange.exc.SEException;
+import exchange.exc.WrongNode;
+import exchange.model.Account;
+import exchange.model.Order;
+import exchange.model.OrderRequest;
+import exchange.vm.Compiler;
+import exchange.vm.Script;
+import exchange.vm.VM;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs every registered strategy once per tick on a work-stealing pool, each on its worker's
+ * reusable VM and capped by its instruction budget. Orders a strategy emits are only queued while
+ * it runs; once all strategies finish they are placed in strategy id order, before the tick's
+ * matching pass. A run that fails or exhausts its budget places nothing.
+ */
+@Service
+@Slf4j
+public class StrategyScheduler {
+    static final int SPLIT_THRESHOLD = 16;
+
+    @Value("${exchange.strategy.parallelism:0}")
+    int parallelism = 0;
+
+    @Value("${exchange.strategy.max-instructions:10000}")
+    int maxInstructions = 10000;
+
+    @Value("${exchange.strategy.max-orders-per-tick:16}")
+    int maxOrdersPerTick = 16;
+
+    final ConcurrentSkipListMap<Long, Strategy> strategies = new ConcurrentSkipListMap<>();
+    final AtomicLong strategyIds = new AtomicLong(0L);
+    ForkJoinPool pool;
+
+    @PostConstruct
+    public void start() {
+        int workers = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(workers);
+    }
+
+    @PreDestroy
+    public void stop() {
+        pool.shutdown();
+    }
+
+    public Strategy register(AssetManager assetManager, OrderBook book, Account account, String source, int budget)
+            throws WrongNode {
+        if (!assetManager.isLocal(book)) {
+            throw new WrongNode(book.getName(), assetManager.owner(book));
+        }
+        Script script = Compiler.compile(source);
+        script.setMaxInstructions(budget > 0 ? Math.min(budget, maxInstructions) : maxInstructions);
+        StrategyContext context = new StrategyContext(assetManager.marketContext(book, account), maxOrdersPerTick);
+        Strategy strategy = new Strategy(strategyIds.incrementAndGet(), account, book, script, context);
+        strategies.put(strategy.id, strategy);
+        return strategy;
+    }
+
+    public boolean remove(long id) {
+        return strategies.remove(id) != null;
+    }
+
+    public Optional<Strategy> get(long id) {
+        return Optional.ofNullable(strategies.get(id));
+    }
+
+    public Collection<Strategy> getStrategies() {
+        return strategies.values();
+    }
+
+    public Mono<Long> runAll(AssetManager assetManager) {
+        if (strategies.isEmpty()) return Mono.just(0L);
+        return Mono.fromCallable(() -> {
+                    List<Strategy> batch = List.copyOf(strategies.values());
+                    pool.invoke(new Batch(batch, 0, batch.size()));
+                    return batch;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(Flux::fromIterable)
+                .concatMap(strategy -> Flux.fromIterable(List.copyOf(strategy.context.orders))
+                        .concatMap(request -> assetManager
+                                .placeOrder(strategy.book, new Order(request.price, request.volume, strategy.account), request.side)
+                                .onErrorResume(ex -> {
+                                    rejected(strategy, ex);
+                                    return Mono.empty();
+                                })))
+                .count();
+    }
+
+    void rejected(Strategy strategy, Throwable ex) {
+        if (ex instanceof SEException) {
+            strategy.ordersRejected++;
+            return;
+        }
+        log.warn("Order of strategy {} failed", strategy.id, ex);
+        strategy.failures++;
+        strategy.lastError = ex.toString();
+    }
+
+    void execute(Strategy strategy) {
+        strategy.context.reset();
+        VM vm = VM.local().bind(strategy.context);
+        try {
+            vm.run(strategy.script);
+            strategy.lastResult = vm.top();
+            if (vm.isExhausted()) {
+                throw new IllegalStateException("Instruction budget of " + strategy.script.getMaxInstructions() + " exhausted");
+            }
+            strategy.ordersQueued += strategy.context.orders.size();
+        } catch (RuntimeException ex) {
+            strategy.context.reset();
+            strategy.failures++;
+            strategy.lastError = ex.toString();
+        } finally {
+            strategy.lastInstructions = vm.getExecutedInstructions();
+            strategy.runs++;
+        }
+    }
+
+    class Batch extends RecursiveAction {
+        final List<Strategy> strategies;
+        final int from;
+        final int to;
+
+        Batch(List<Strategy> strategies, int from, int to) {
+            this.strategies = strategies;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    execute(strategies.get(i));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Batch(strategies, from, middle), new Batch(strategies, middle, to));
+        }
+    }
+}
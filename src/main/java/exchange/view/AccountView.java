@@ -1,6 +1,5 @@
 package exchange.view;
 
-import exchange.core.AssetManager;
 import exchange.model.Account;
 
 import java.util.HashMap;
@@ -10,8 +9,8 @@ public class AccountView {
     public String id;
     public Map<String, Long> assets = new HashMap<>();
 
-    public AccountView(Account account, AssetManager repository) {
+    public AccountView(Account account, Map<String, Long> assets) {
         id = account.getId();
-        assets.putAll(repository.getPublicAssets(account));
+        this.assets.putAll(assets);
     }
 }
@@ -0,0 +1,24 @@
+package exchange.view;
+
+public class CandleView {
+    public String interval;
+    public long start;
+    public long open;
+    public long high;
+    public long low;
+    public long close;
+    public long volume;
+    public long trades;
+
+    public CandleView(String interval, long start, long open, long high, long low, long close, long volume,
+                      long trades) {
+        this.interval = interval;
+        this.start = start;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.volume = volume;
+        this.trades = trades;
+    }
+}
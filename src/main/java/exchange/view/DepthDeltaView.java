@@ -0,0 +1,20 @@
+package exchange.view;
+
+import java.util.List;
+
+public class DepthDeltaView {
+    public String name;
+    public long sequence;
+    public long time;
+    public List<AggregateOrderView> bid;
+    public List<AggregateOrderView> ask;
+
+    public DepthDeltaView(String name, long sequence, long time, List<AggregateOrderView> bid,
+                          List<AggregateOrderView> ask) {
+        this.name = name;
+        this.sequence = sequence;
+        this.time = time;
+        this.bid = bid;
+        this.ask = ask;
+    }
+}
@@ -1,18 +1,18 @@
 package exchange.view;
 
-import exchange.core.AssetManager;
+import exchange.core.DepthSnapshot;
 import exchange.core.OrderBook;
-import exchange.model.Order;
 import exchange.model.Tx;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 public class OrderBookView {
     public String left;
     public String right;
     public String name;
+    public long version;
+    public long sequence;
     public List<AggregateOrderView> bid;
     public List<AggregateOrderView> ask;
     public long lastPrice;
@@ -20,27 +20,28 @@ public class OrderBookView {
     public AggregateOrderView topBid;
     public AggregateOrderView topAsk;
 
-    public OrderBookView(OrderBook ob, AssetManager repository) {
+    public OrderBookView(OrderBook ob, int levels) {
+        DepthSnapshot depth = ob.getDepth();
         left = ob.getLeft();
         right = ob.getRight();
         name = ob.getName();
-        bid = toAggregate(ob.getBids()).stream().sorted(AggregateOrderView::inverseCompare).toList();
-        ask = toAggregate(ob.getAsks()).stream().sorted(AggregateOrderView::compare).toList();
-        Order bestBid = ob.getTopBid();
-        Order bestAsk = ob.getTopAsk();
-        if (bestBid != null)
-            topBid = new AggregateOrderView(bestBid.getPrice(), bestBid.getRealVolume());
-        if (bestAsk != null)
-            topAsk = new AggregateOrderView(bestAsk.getPrice(), bestAsk.getRealVolume());
-        lastPrice = ob.getLastPrice();
-        history = ob.getPriceHistory();
-    }
-
-    private List<AggregateOrderView> toAggregate(Map<Long, Long> side) {
-        List<AggregateOrderView> orders = new LinkedList<>();
-        for (Map.Entry<Long, Long> entry : side.entrySet()) {
-            orders.add(new AggregateOrderView(entry.getKey(), entry.getValue()));
+        version = depth.getVersion();
+        sequence = depth.getSequence();
+        int bidLevels = levels > 0 ? Math.min(levels, depth.getBidLevels()) : depth.getBidLevels();
+        int askLevels = levels > 0 ? Math.min(levels, depth.getAskLevels()) : depth.getAskLevels();
+        bid = new ArrayList<>(bidLevels);
+        for (int i = 0; i < bidLevels; i++) {
+            bid.add(new AggregateOrderView(depth.getBidPrice(i), depth.getBidVolume(i)));
+        }
+        ask = new ArrayList<>(askLevels);
+        for (int i = 0; i < askLevels; i++) {
+            ask.add(new AggregateOrderView(depth.getAskPrice(i), depth.getAskVolume(i)));
         }
-        return orders;
+        if (depth.hasTopBid())
+            topBid = new AggregateOrderView(depth.getTopBidPrice(), depth.getTopBidVolume());
+        if (depth.hasTopAsk())
+            topAsk = new AggregateOrderView(depth.getTopAskPrice(), depth.getTopAskVolume());
+        lastPrice = depth.getLastPrice();
+        history = depth.getHistory();
     }
 }
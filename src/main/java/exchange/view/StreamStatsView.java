@@ -0,0 +1,28 @@
+package exchange.view;
+
+import exchange.constant.OverflowPolicy;
+
+import java.util.List;
+
+public class StreamStatsView {
+    public OverflowPolicy policy;
+    public int capacity;
+    public long published;
+    public long disconnected;
+    public long maxLag;
+    public long dropped;
+    public List<SubscriberStatsView> subscribers;
+
+    public StreamStatsView(OverflowPolicy policy, int capacity, long published, long disconnected,
+                           List<SubscriberStatsView> subscribers) {
+        this.policy = policy;
+        this.capacity = capacity;
+        this.published = published;
+        this.disconnected = disconnected;
+        this.subscribers = subscribers;
+        for (SubscriberStatsView subscriber : subscribers) {
+            maxLag = Math.max(maxLag, subscriber.lag);
+            dropped += subscriber.dropped;
+        }
+    }
+}
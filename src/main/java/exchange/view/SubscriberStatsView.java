@@ -0,0 +1,15 @@
+package exchange.view;
+
+public class SubscriberStatsView {
+    public long id;
+    public long lag;
+    public long dropped;
+    public long delivered;
+
+    public SubscriberStatsView(long id, long lag, long dropped, long delivered) {
+        this.id = id;
+        this.lag = lag;
+        this.dropped = dropped;
+        this.delivered = delivered;
+    }
+}
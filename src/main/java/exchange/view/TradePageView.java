@@ -0,0 +1,21 @@
+package exchange.view;
+
+import exchange.model.Tx;
+
+import java.util.List;
+
+public class TradePageView {
+    public String name;
+    public long from;
+    public long next;
+    public long total;
+    public List<Tx> trades;
+
+    public TradePageView(String name, long from, long total, List<Tx> trades) {
+        this.name = name;
+        this.from = from;
+        this.total = total;
+        this.trades = trades;
+        this.next = trades.isEmpty() ? from : trades.get(trades.size() - 1).seq + 1;
+    }
+}
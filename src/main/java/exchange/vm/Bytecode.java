@@ -0,0 +1,86 @@
+package exchange.vm;
+
+/**
+ * One instruction per {@code int}: opcode in bits 0-4, condition in bits 5-7 and a signed 24-bit
+ * operand in bits 8-31. Constants that do not fit the operand go to the script's constant pool and
+ * are loaded with {@link #LOADK_WIDE}, whose operand is the pool index.
+ */
+final class Bytecode {
+    static final int ADD = 0;
+    static final int BUY = 1;
+    static final int CALL = 2;
+    static final int CMP = 3;
+    static final int DIV = 4;
+    static final int DUP = 5;
+    static final int DUP2 = 6;
+    static final int BR = 7;
+    static final int LOAD = 8;
+    static final int LOADK = 9;
+    static final int MAX = 10;
+    static final int MEAN = 11;
+    static final int MEDIAN = 12;
+    static final int MIN = 13;
+    static final int MOD = 14;
+    static final int MUL = 15;
+    static final int READ = 16;
+    static final int RET = 17;
+    static final int SELL = 18;
+    static final int STD = 19;
+    static final int STORE = 20;
+    static final int SUB = 21;
+    static final int EXIT = 22;
+    static final int LOADK_WIDE = 31;
+
+    static final int OPCODE_MASK = 0x1F;
+    static final int CONDITION_SHIFT = 5;
+    static final int CONDITION_MASK = 0x7;
+    static final int OPERAND_SHIFT = 8;
+    static final int OPERAND_MIN = -(1 << 23);
+    static final int OPERAND_MAX = (1 << 23) - 1;
+
+    static final Opcode[] OPCODES = Opcode.values();
+    static final Condition[] CONDITIONS = Condition.values();
+
+    private Bytecode() {
+    }
+
+    static boolean fits(int operand) {
+        return operand >= OPERAND_MIN && operand <= OPERAND_MAX;
+    }
+
+    static int encode(int opcode, int condition, int operand) {
+        if (!fits(operand)) {
+            throw new IllegalArgumentException("Operand out of range: " + operand);
+        }
+        return opcode | condition << CONDITION_SHIFT | operand << OPERAND_SHIFT;
+    }
+
+    static int encode(Opcode opcode, Condition condition, int operand) {
+        return encode(opcode.ordinal(), condition.ordinal(), operand);
+    }
+
+    static int opcode(int word) {
+        return word & OPCODE_MASK;
+    }
+
+    static int condition(int word) {
+        return word >>> CONDITION_SHIFT & CONDITION_MASK;
+    }
+
+    static int operand(int word) {
+        return word >> OPERAND_SHIFT;
+    }
+
+    static Instruction decode(int word, int[] constants) {
+        Instruction instruction = new Instruction();
+        instruction.condition = CONDITIONS[condition(word)];
+        if (opcode(word) == LOADK_WIDE) {
+            instruction.opcode = Opcode.LOADK;
+            instruction.value = constants[operand(word)];
+        } else {
+            instruction.opcode = OPCODES[opcode(word)];
+            instruction.value = operand(word);
+        }
+        return instruction;
+    }
+}
@@ -0,0 +1,5 @@
+package exchange.vm;
+
+interface CompiledScript {
+    void run(VM vm);
+}
@@ -1,51 +1,67 @@
 package exchange.vm;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.TreeMap;
 
 public class Compiler {
+    static final Map<String, Opcode> OPCODES = new HashMap<>();
+
+    static {
+        for (Opcode opcode : Opcode.values()) {
+            OPCODES.put(opcode.name(), opcode);
+        }
+    }
 
     public static Script compile(String code) {
-        Scope activeScope = new Scope();
+        Scope activeScope = new Scope(null);
         final List<SemiInstruction> semiInstructions = new ArrayList<>();
-        final String[] lines = code.split("\n");
+        final int length = code.length();
+        int lineNumber = 1;
+        int pos = 0;
+
+        while (pos <= length) {
+            int lineEnd = code.indexOf('\n', pos);
+            if (lineEnd < 0) lineEnd = length;
+            int end = pos;
+            while (end < lineEnd && code.charAt(end) != '#') end++;
 
-        for (String line : lines) {
-            line = line.trim().split("#")[0];
-            if (line.length() == 0) continue;
-            String[] tokens = line.split("\\s+");
             int i = 0;
             String imm = "0";
             Opcode opcode = null;
             Condition condition = Condition.NONE;
-            for (String token : tokens) {
-                if (token.equals("{")) {
-                    activeScope = activeScope.createChild();
-                } else if (token.equals("}")) {
+            int cursor = pos;
+            while (true) {
+                while (cursor < end && code.charAt(cursor) <= ' ') cursor++;
+                if (cursor >= end) break;
+                int start = cursor;
+                while (cursor < end && code.charAt(cursor) > ' ') cursor++;
+                char first = code.charAt(start);
+                int tokenLength = cursor - start;
+
+                if (tokenLength == 1 && first == '{') {
+                    activeScope = new Scope(activeScope);
+                } else if (tokenLength == 1 && first == '}') {
+                    if (activeScope.parent == null) {
+                        throw new IllegalArgumentException("Unbalanced } on line " + lineNumber);
+                    }
                     activeScope = activeScope.parent;
-                } else if (token.startsWith(":")) {
+                } else if (first == ':') {
                     if (i == 0) {
-                        activeScope.put(token, semiInstructions.size());
+                        activeScope.put(code.substring(start, cursor), semiInstructions.size());
                     } else {
-                        imm = token;
+                        imm = code.substring(start, cursor);
                     }
-                } else if (token.startsWith("$")) {
-                    imm = token;
+                } else if (first == '$' || opcode != null) {
+                    imm = code.substring(start, cursor);
                 } else {
+                    condition = tokenLength >= 2 ? suffix(code.charAt(cursor - 2), code.charAt(cursor - 1)) : Condition.NONE;
+                    int nameEnd = condition == Condition.NONE ? cursor : cursor - 2;
+                    opcode = OPCODES.get(code.substring(start, nameEnd).toUpperCase(Locale.ROOT));
                     if (opcode == null) {
-                        if (token.length() >= 2) {
-                            try {
-                                condition = Condition.valueOf(token.substring(token.length() - 2));
-                                token = token.substring(0, token.length() - 2);
-                            } catch (IllegalArgumentException ex) {
-                                condition = Condition.NONE;
-                            }
-                        }
-                        opcode = Opcode.valueOf(token.toUpperCase());
-                    } else {
-                        imm = token;
+                        throw new IllegalArgumentException("Unknown opcode " + code.substring(start, cursor) + " on line " + lineNumber);
                     }
                 }
                 i++;
@@ -56,51 +72,79 @@ public class Compiler {
                 semi.opcode = opcode;
                 semi.imm = imm;
                 semi.scope = activeScope;
+                semi.line = lineNumber;
                 semiInstructions.add(semi);
             }
+            pos = lineEnd + 1;
+            lineNumber++;
         }
-        List<Instruction> instructions = semiInstructions.stream().map(inst -> {
-            Instruction real = new Instruction();
-            real.opcode = inst.opcode;
-            real.condition = inst.condition;
+
+        final int[] words = new int[semiInstructions.size()];
+        final List<Integer> constants = new ArrayList<>();
+        for (int pc = 0; pc < words.length; pc++) {
+            SemiInstruction inst = semiInstructions.get(pc);
+            int value;
             if (inst.imm.startsWith(":")) {
                 Scope scope = inst.scope.parent != null ? inst.scope.parent : inst.scope;
-                real.value = scope.getIndex(inst.imm, false);
+                Integer target = scope.getIndex(inst.imm, false);
+                if (target == null) {
+                    throw new IllegalArgumentException("Unknown label " + inst.imm + " on line " + inst.line);
+                }
+                value = target;
             } else if (inst.imm.startsWith("$")) {
-                real.value = inst.scope.getIndex(inst.imm, true);
+                value = inst.scope.getIndex(inst.imm, true);
+            } else {
+                value = Integer.parseInt(inst.imm);
+            }
+            if (inst.opcode == Opcode.LOADK && !Bytecode.fits(value)) {
+                words[pc] = Bytecode.encode(Bytecode.LOADK_WIDE, inst.condition.ordinal(), constants.size());
+                constants.add(value);
             } else {
-                real.value = Integer.parseInt(inst.imm);
+                words[pc] = Bytecode.encode(inst.opcode, inst.condition, value);
             }
-            return real;
-        }).toList();
+        }
         Script script = new Script();
-        script.instructions = instructions;
+        script.code = words;
+        script.constants = constants.stream().mapToInt(Integer::intValue).toArray();
         return script;
     }
 
+    static Condition suffix(char a, char b) {
+        return switch (a) {
+            case 'E' -> b == 'Q' ? Condition.EQ : Condition.NONE;
+            case 'N' -> b == 'E' ? Condition.NE : Condition.NONE;
+            case 'L' -> b == 'E' ? Condition.LE : b == 'T' ? Condition.LT : Condition.NONE;
+            case 'G' -> b == 'E' ? Condition.GE : b == 'T' ? Condition.GT : Condition.NONE;
+            default -> Condition.NONE;
+        };
+    }
+
     static class SemiInstruction {
         Opcode opcode;
         Condition condition;
         String imm;
         Scope scope;
+        int line;
     }
 
     static class Scope {
-        static int scopeCounter = 0;
-        int scopeId = scopeCounter++;
         int varCounter = 0;
-        Map<String, Integer> labels = new TreeMap<>();
-        Scope parent;
+        final Map<String, Integer> labels = new HashMap<>();
+        final Scope parent;
+
+        Scope(Scope parent) {
+            this.parent = parent;
+        }
 
         Integer getIndex(String label, boolean create) {
-            if (labels.containsKey(label)) {
-                return labels.get(label);
-            } else {
-                if (parent != null) {
-                    Integer parentIdx = parent.getIndex(label, false);
-                    if (parentIdx != null) {
-                        return parentIdx;
-                    }
+            Integer index = labels.get(label);
+            if (index != null) {
+                return index;
+            }
+            if (parent != null) {
+                Integer parentIdx = parent.getIndex(label, false);
+                if (parentIdx != null) {
+                    return parentIdx;
                 }
             }
             if (create) {
@@ -113,13 +157,6 @@ public class Compiler {
             }
         }
 
-        Scope createChild() {
-            Scope scope = new Scope();
-            scope.varCounter = 0;
-            scope.parent = this;
-            return scope;
-        }
-
         int getOffset() {
             if (parent == null) return varCounter;
             return varCounter + parent.getOffset();
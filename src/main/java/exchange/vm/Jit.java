@@ -0,0 +1,382 @@
+package exchange.vm;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.Label;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+
+/**
+ * Translates a script into a hidden class once it has run {@link #threshold} times. The generated
+ * method keeps the VM registers in locals, gives every instruction its own label and jumps between
+ * them directly; RET goes through a tableswitch over all instruction addresses. Opcodes without an
+ * inline translation call {@link VM#step(int)}. Anything the generated code cannot follow (a jump
+ * outside the script, an exhausted budget) writes the registers back and returns, and
+ * {@link VM#run(Script)} finishes in the interpreter from that exact state.
+ */
+@Slf4j
+final class Jit {
+    static volatile boolean enabled = true;
+    static volatile int threshold = 1000;
+
+    static final String VM_TYPE = "exchange/vm/VM";
+    static final int THIS = 0;
+    static final int VM = 1;
+    static final int STACK = 2;
+    static final int MEMORY = 3;
+    static final int CALL_STACK = 4;
+    static final int SP = 5;
+    static final int CSP = 6;
+    static final int FLAG = 7;
+    static final int EXECUTED = 8;
+    static final int IP = 9;
+    static final int A = 10;
+    static final int B = 11;
+    static final int T = 12;
+
+    private Jit() {
+    }
+
+    static CompiledScript select(Script script) {
+        CompiledScript compiled = script.compiled;
+        if (compiled != null || !enabled || script.interpretOnly) return compiled;
+        if (++script.executions < threshold) return null;
+        synchronized (script) {
+            if (script.compiled == null && !script.interpretOnly) {
+                try {
+                    script.compiled = compile(script);
+                } catch (Throwable ex) {
+                    log.warn("Keeping script of {} instructions in the interpreter: {}", script.code.length, ex.toString());
+                    script.interpretOnly = true;
+                }
+            }
+            return script.compiled;
+        }
+    }
+
+    static CompiledScript compile(Script script) throws Throwable {
+        if (script.code.length == 0) {
+            throw new IllegalArgumentException("empty script");
+        }
+        byte[] bytes = generate(script);
+        MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+        return (CompiledScript) lookup
+                .findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                .invoke();
+    }
+
+    static byte[] generate(Script script) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V17, Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, "exchange/vm/CompiledScriptImpl", null,
+                "java/lang/Object", new String[]{"exchange/vm/CompiledScript"});
+
+        MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, THIS);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "run", "(L" + VM_TYPE + ";)V", null, null);
+        mv.visitCode();
+        new Emitter(mv, script).emit();
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    static class Emitter {
+        final MethodVisitor mv;
+        final int[] code;
+        final int[] constants;
+        final int budget;
+        final Label[] labels;
+        final Label dispatch = new Label();
+        final Label exit = new Label();
+
+        Emitter(MethodVisitor mv, Script script) {
+            this.mv = mv;
+            this.code = script.code;
+            this.constants = script.constants;
+            this.budget = script.maxInstructions;
+            this.labels = new Label[code.length + 1];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = new Label();
+            }
+        }
+
+        void emit() {
+            prologue();
+            for (int pc = 0; pc < code.length; pc++) {
+                mv.visitLabel(labels[pc]);
+                instruction(pc, code[pc]);
+            }
+            mv.visitLabel(labels[code.length]);
+            exitAt(code.length);
+            dispatchTable();
+            epilogue();
+        }
+
+        void prologue() {
+            Label running = new Label();
+            mv.visitVarInsn(Opcodes.ALOAD, VM);
+            mv.visitFieldInsn(Opcodes.GETFIELD, VM_TYPE, "halted", "Z");
+            mv.visitJumpInsn(Opcodes.IFEQ, running);
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitLabel(running);
+            loadArray("stack", STACK);
+            loadArray("memory", MEMORY);
+            loadArray("callStack", CALL_STACK);
+            loadInt("stackPointer", SP);
+            loadInt("callStackPointer", CSP);
+            loadInt("zf", FLAG);
+            loadInt("executedInstructions", EXECUTED);
+            mv.visitInsn(Opcodes.ICONST_0);
+            mv.visitVarInsn(Opcodes.ISTORE, IP);
+            mv.visitInsn(Opcodes.ICONST_0);
+            mv.visitVarInsn(Opcodes.ISTORE, A);
+            mv.visitInsn(Opcodes.ICONST_0);
+            mv.visitVarInsn(Opcodes.ISTORE, B);
+            loadInt("instructionPointer", T);
+            mv.visitJumpInsn(Opcodes.GOTO, dispatch);
+        }
+
+        void instruction(int pc, int word) {
+            if (budget > 0) {
+                Label within = new Label();
+                mv.visitVarInsn(Opcodes.ILOAD, EXECUTED);
+                pushInt(budget);
+                mv.visitJumpInsn(Opcodes.IF_ICMPLT, within);
+                exitAt(pc);
+                mv.visitLabel(within);
+            }
+            mv.visitIincInsn(EXECUTED, 1);
+            Label next = labels[pc + 1];
+            switch (Bytecode.condition(word)) {
+                case 1 -> skipIf(Opcodes.IFNE, next);
+                case 2 -> skipIf(Opcodes.IFEQ, next);
+                case 3 -> skipIf(Opcodes.IFGT, next);
+                case 4 -> skipIf(Opcodes.IFLT, next);
+                case 5 -> skipIf(Opcodes.IFGE, next);
+                case 6 -> skipIf(Opcodes.IFLE, next);
+                default -> {
+                }
+            }
+            int operand = Bytecode.operand(word);
+            switch (Bytecode.opcode(word)) {
+                case Bytecode.ADD -> arithmetic(Opcodes.IADD);
+                case Bytecode.SUB -> arithmetic(Opcodes.ISUB);
+                case Bytecode.MUL -> arithmetic(Opcodes.IMUL);
+                case Bytecode.DIV -> arithmetic(Opcodes.IDIV);
+                case Bytecode.MOD -> arithmetic(Opcodes.IREM);
+                case Bytecode.LOADK -> {
+                    pushInt(operand);
+                    pushT();
+                }
+                case Bytecode.LOADK_WIDE -> {
+                    pushInt(constants[operand]);
+                    pushT();
+                }
+                case Bytecode.LOAD -> {
+                    mv.visitVarInsn(Opcodes.ALOAD, MEMORY);
+                    pushInt(operand);
+                    mv.visitInsn(Opcodes.IALOAD);
+                    pushT();
+                }
+                case Bytecode.STORE -> {
+                    Label empty = new Label();
+                    pop(T);
+                    mv.visitVarInsn(Opcodes.ALOAD, MEMORY);
+                    pushInt(operand);
+                    mv.visitVarInsn(Opcodes.ILOAD, T);
+                    mv.visitInsn(Opcodes.IASTORE);
+                    mv.visitVarInsn(Opcodes.ILOAD, SP);
+                    mv.visitJumpInsn(Opcodes.IFLE, empty);
+                    mv.visitVarInsn(Opcodes.ALOAD, STACK);
+                    mv.visitVarInsn(Opcodes.ILOAD, SP);
+                    mv.visitInsn(Opcodes.ICONST_1);
+                    mv.visitInsn(Opcodes.ISUB);
+                    mv.visitInsn(Opcodes.IALOAD);
+                    setFlag();
+                    mv.visitLabel(empty);
+                }
+                case Bytecode.DUP -> {
+                    mv.visitVarInsn(Opcodes.ALOAD, STACK);
+                    mv.visitVarInsn(Opcodes.ILOAD, SP);
+                    mv.visitInsn(Opcodes.ICONST_1);
+                    mv.visitInsn(Opcodes.ISUB);
+                    mv.visitInsn(Opcodes.IALOAD);
+                    pushT();
+                }
+                case Bytecode.DUP2 -> {
+                    pop(B);
+                    pop(A);
+                    push(A);
+                    push(B);
+                    push(A);
+                    push(B);
+                    mv.visitVarInsn(Opcodes.ILOAD, B);
+                    setFlag();
+                }
+                case Bytecode.CMP -> {
+                    pop(B);
+                    pop(A);
+                    mv.visitVarInsn(Opcodes.ILOAD, A);
+                    mv.visitVarInsn(Opcodes.ILOAD, B);
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Integer", "compare", "(II)I", false);
+                    mv.visitVarInsn(Opcodes.ISTORE, FLAG);
+                }
+                case Bytecode.BR -> jump(operand);
+                case Bytecode.CALL -> {
+                    mv.visitVarInsn(Opcodes.ALOAD, CALL_STACK);
+                    mv.visitVarInsn(Opcodes.ILOAD, CSP);
+                    pushInt(pc);
+                    mv.visitInsn(Opcodes.IASTORE);
+                    mv.visitIincInsn(CSP, 1);
+                    jump(operand);
+                }
+                case Bytecode.RET -> {
+                    mv.visitIincInsn(CSP, -1);
+                    mv.visitVarInsn(Opcodes.ALOAD, CALL_STACK);
+                    mv.visitVarInsn(Opcodes.ILOAD, CSP);
+                    mv.visitInsn(Opcodes.IALOAD);
+                    mv.visitInsn(Opcodes.ICONST_1);
+                    mv.visitInsn(Opcodes.IADD);
+                    mv.visitVarInsn(Opcodes.ISTORE, T);
+                    mv.visitJumpInsn(Opcodes.GOTO, dispatch);
+                }
+                case Bytecode.EXIT -> {
+                    mv.visitVarInsn(Opcodes.ALOAD, VM);
+                    mv.visitInsn(Opcodes.ICONST_1);
+                    mv.visitFieldInsn(Opcodes.PUTFIELD, VM_TYPE, "halted", "Z");
+                    exitAt(pc + 1);
+                }
+                default -> slowPath(word);
+            }
+        }
+
+        void slowPath(int word) {
+            storeInt(SP, "stackPointer");
+            storeInt(FLAG, "zf");
+            mv.visitVarInsn(Opcodes.ALOAD, VM);
+            pushInt(word);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, VM_TYPE, "step", "(I)V", false);
+            loadInt("stackPointer", SP);
+            loadInt("zf", FLAG);
+        }
+
+        void jump(int target) {
+            if (target >= 0 && target < code.length) {
+                mv.visitJumpInsn(Opcodes.GOTO, labels[target]);
+            } else {
+                exitAt(target);
+            }
+        }
+
+        void exitAt(int ip) {
+            pushInt(ip);
+            mv.visitVarInsn(Opcodes.ISTORE, IP);
+            mv.visitJumpInsn(Opcodes.GOTO, exit);
+        }
+
+        void dispatchTable() {
+            Label outside = new Label();
+            mv.visitLabel(dispatch);
+            mv.visitVarInsn(Opcodes.ILOAD, T);
+            mv.visitTableSwitchInsn(0, code.length - 1, outside, Arrays.copyOf(labels, code.length));
+            mv.visitLabel(outside);
+            mv.visitVarInsn(Opcodes.ILOAD, T);
+            mv.visitVarInsn(Opcodes.ISTORE, IP);
+            mv.visitJumpInsn(Opcodes.GOTO, exit);
+        }
+
+        void epilogue() {
+            mv.visitLabel(exit);
+            storeInt(IP, "instructionPointer");
+            storeInt(SP, "stackPointer");
+            storeInt(CSP, "callStackPointer");
+            storeInt(FLAG, "zf");
+            storeInt(EXECUTED, "executedInstructions");
+            mv.visitInsn(Opcodes.RETURN);
+        }
+
+        void skipIf(int opcode, Label next) {
+            mv.visitVarInsn(Opcodes.ILOAD, FLAG);
+            mv.visitJumpInsn(opcode, next);
+        }
+
+        void arithmetic(int opcode) {
+            pop(B);
+            pop(A);
+            mv.visitVarInsn(Opcodes.ILOAD, A);
+            mv.visitVarInsn(Opcodes.ILOAD, B);
+            mv.visitInsn(opcode);
+            pushT();
+        }
+
+        // Pushes the int on the operand stack onto the VM stack and sets the flag from it.
+        void pushT() {
+            mv.visitVarInsn(Opcodes.ISTORE, T);
+            push(T);
+            mv.visitVarInsn(Opcodes.ILOAD, T);
+            setFlag();
+        }
+
+        void push(int local) {
+            mv.visitVarInsn(Opcodes.ALOAD, STACK);
+            mv.visitVarInsn(Opcodes.ILOAD, SP);
+            mv.visitVarInsn(Opcodes.ILOAD, local);
+            mv.visitInsn(Opcodes.IASTORE);
+            mv.visitIincInsn(SP, 1);
+        }
+
+        void pop(int local) {
+            mv.visitIincInsn(SP, -1);
+            mv.visitVarInsn(Opcodes.ALOAD, STACK);
+            mv.visitVarInsn(Opcodes.ILOAD, SP);
+            mv.visitInsn(Opcodes.IALOAD);
+            mv.visitVarInsn(Opcodes.ISTORE, local);
+        }
+
+        void setFlag() {
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Integer", "signum", "(I)I", false);
+            mv.visitVarInsn(Opcodes.ISTORE, FLAG);
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                mv.visitInsn(Opcodes.ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                mv.visitIntInsn(Opcodes.BIPUSH, value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                mv.visitIntInsn(Opcodes.SIPUSH, value);
+            } else {
+                mv.visitLdcInsn(value);
+            }
+        }
+
+        void loadArray(String field, int local) {
+            mv.visitVarInsn(Opcodes.ALOAD, VM);
+            mv.visitFieldInsn(Opcodes.GETFIELD, VM_TYPE, field, "[I");
+            mv.visitVarInsn(Opcodes.ASTORE, local);
+        }
+
+        void loadInt(String field, int local) {
+            mv.visitVarInsn(Opcodes.ALOAD, VM);
+            mv.visitFieldInsn(Opcodes.GETFIELD, VM_TYPE, field, "I");
+            mv.visitVarInsn(Opcodes.ISTORE, local);
+        }
+
+        void storeInt(int local, String field) {
+            mv.visitVarInsn(Opcodes.ALOAD, VM);
+            mv.visitVarInsn(Opcodes.ILOAD, local);
+            mv.visitFieldInsn(Opcodes.PUTFIELD, VM_TYPE, field, "I");
+        }
+    }
+}
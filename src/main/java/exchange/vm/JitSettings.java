@@ -0,0 +1,21 @@
+package exchange.vm;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+@Component
+public class JitSettings {
+    @Value("${exchange.vm.jit.enabled:true}")
+    boolean enabled = true;
+
+    @Value("${exchange.vm.jit.threshold:1000}")
+    int threshold = 1000;
+
+    @PostConstruct
+    public void apply() {
+        Jit.enabled = enabled;
+        Jit.threshold = threshold;
+    }
+}
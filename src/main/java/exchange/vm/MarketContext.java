@@ -0,0 +1,19 @@
+package exchange.vm;
+
+public interface MarketContext {
+    long read(int back);
+
+    boolean buy(long price, long volume);
+
+    boolean sell(long price, long volume);
+
+    long mean(int window);
+
+    long median(int window);
+
+    long std(int window);
+
+    long min(int window);
+
+    long max(int window);
+}
@@ -1,12 +1,37 @@
 package exchange.vm;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class Script {
-    List<Instruction> instructions;
+    int[] code;
+    int[] constants;
     int maxInstructions = 0;
+    int executions = 0;
+    volatile CompiledScript compiled;
+    volatile boolean interpretOnly = false;
 
     public List<Instruction> getInstructions() {
+        List<Instruction> instructions = new ArrayList<>(code.length);
+        for (int word : code) {
+            instructions.add(Bytecode.decode(word, constants));
+        }
         return instructions;
     }
+
+    public int getMaxInstructions() {
+        return maxInstructions;
+    }
+
+    public void setMaxInstructions(int maxInstructions) {
+        this.maxInstructions = maxInstructions;
+    }
+
+    public int[] getCode() {
+        return code;
+    }
+
+    public int[] getConstants() {
+        return constants;
+    }
 }
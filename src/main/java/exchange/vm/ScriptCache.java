@@ -0,0 +1,41 @@
+package exchange.vm;
+
+import exchange.util.LruCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+@Component
+public class ScriptCache {
+    @Value("${exchange.vm.script-cache-size:1024}")
+    int capacity = 1024;
+
+    LruCache<String, Script> scripts;
+
+    @PostConstruct
+    public void start() {
+        scripts = new LruCache<>(capacity);
+    }
+
+    public Script get(String source) {
+        return scripts.computeIfAbsent(digest(source), key -> Compiler.compile(source));
+    }
+
+    public LruCache<String, Script> getScripts() {
+        return scripts;
+    }
+
+    static String digest(String source) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha.digest(source.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
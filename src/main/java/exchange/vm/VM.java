@@ -1,6 +1,6 @@
 package exchange.vm;
 
-import java.util.List;
+import java.util.Arrays;
 
 public class VM {
     int zf = 0;
@@ -14,6 +14,10 @@ public class VM {
     long startTime = 0L;
     long executionTime = 0L;
     boolean halted = false;
+    int codeSize = 0;
+    MarketContext market;
+
+    static final ThreadLocal<VM> LOCAL = ThreadLocal.withInitial(VM::new);
 
     public static VM exec(Script script) {
         VM vm = new VM();
@@ -21,91 +25,171 @@ public class VM {
         return vm;
     }
 
+    public static VM local() {
+        VM vm = LOCAL.get();
+        vm.reset();
+        return vm;
+    }
+
+    public void reset() {
+        zf = 0;
+        stackPointer = 0;
+        callStackPointer = 0;
+        instructionPointer = 0;
+        executedInstructions = 0;
+        startTime = 0L;
+        executionTime = 0L;
+        halted = false;
+        codeSize = 0;
+        market = null;
+        Arrays.fill(memory, 0);
+    }
+
+    public VM bind(MarketContext market) {
+        this.market = market;
+        return this;
+    }
+
     public void run(Script script) {
         startTime = System.currentTimeMillis();
-        List<Instruction> instructions = script.instructions;
-        int maxExecuted = script.maxInstructions;
-        while (!halted && instructionPointer < instructions.size() && (maxExecuted == 0 || executedInstructions < maxExecuted)) {
-            exec(instructions.get(instructionPointer));
-            instructionPointer += 1;
-            executedInstructions++;
+        try {
+            CompiledScript compiled = Jit.select(script);
+            if (compiled != null) {
+                compiled.run(this);
+            }
+            interpret(script);
+        } finally {
+            executionTime = System.currentTimeMillis() - startTime;
         }
-        executionTime = System.currentTimeMillis() - startTime;
     }
 
-    private void exec(Instruction inst) {
+    void interpret(Script script) {
+        final int[] code = script.code;
+        final int[] constants = script.constants;
+        final int[] memory = this.memory;
+        final int[] stack = this.stack;
+        final int[] callStack = this.callStack;
+        final int size = code.length;
+        codeSize = size;
+        final int maxExecuted = script.maxInstructions == 0 ? Integer.MAX_VALUE : script.maxInstructions;
+        int ip = instructionPointer;
+        int sp = stackPointer;
+        int csp = callStackPointer;
+        int flag = zf;
+        int executed = executedInstructions;
+        boolean stop = halted;
         int a;
         int b;
-
-        switch (inst.condition) {
-            case EQ:
-                if (zf != 0) return;
-                break;
-            case LT:
-                if (zf >= 0) return;
-                break;
-            case GT:
-                if (zf <= 0) return;
-                break;
-            case LE:
-                if (zf > 0) return;
-                break;
-            case GE:
-                if (zf < 0) return;
-                break;
-            case NE:
-                if (zf == 0) return;
-                break;
-            case NONE:
-                break;
+        try {
+            while (!stop && ip < size && executed < maxExecuted) {
+                final int word = code[ip];
+                executed++;
+                switch (word >>> Bytecode.CONDITION_SHIFT & Bytecode.CONDITION_MASK) {
+                    case 1 -> { if (flag != 0) { ip++; continue; } }
+                    case 2 -> { if (flag == 0) { ip++; continue; } }
+                    case 3 -> { if (flag > 0) { ip++; continue; } }
+                    case 4 -> { if (flag < 0) { ip++; continue; } }
+                    case 5 -> { if (flag >= 0) { ip++; continue; } }
+                    case 6 -> { if (flag <= 0) { ip++; continue; } }
+                    default -> { }
+                }
+                switch (word & Bytecode.OPCODE_MASK) {
+                    case Bytecode.ADD -> {
+                        b = stack[--sp];
+                        a = stack[--sp];
+                        flag = Integer.compare(stack[sp++] = a + b, 0);
+                    }
+                    case Bytecode.SUB -> {
+                        b = stack[--sp];
+                        a = stack[--sp];
+                        flag = Integer.compare(stack[sp++] = a - b, 0);
+                    }
+                    case Bytecode.MUL -> {
+                        b = stack[--sp];
+                        a = stack[--sp];
+                        flag = Integer.compare(stack[sp++] = a * b, 0);
+                    }
+                    case Bytecode.DIV -> {
+                        b = stack[--sp];
+                        a = stack[--sp];
+                        flag = Integer.compare(stack[sp++] = a / b, 0);
+                    }
+                    case Bytecode.MOD -> {
+                        b = stack[--sp];
+                        a = stack[--sp];
+                        flag = Integer.compare(stack[sp++] = a % b, 0);
+                    }
+                    case Bytecode.LOADK -> flag = Integer.compare(stack[sp++] = word >> Bytecode.OPERAND_SHIFT, 0);
+                    case Bytecode.LOADK_WIDE -> flag = Integer.compare(stack[sp++] = constants[word >> Bytecode.OPERAND_SHIFT], 0);
+                    case Bytecode.LOAD -> flag = Integer.compare(stack[sp++] = memory[word >> Bytecode.OPERAND_SHIFT], 0);
+                    case Bytecode.STORE -> {
+                        memory[word >> Bytecode.OPERAND_SHIFT] = stack[--sp];
+                        if (sp > 0) flag = Integer.compare(stack[sp - 1], 0);
+                    }
+                    case Bytecode.DUP -> {
+                        a = stack[sp - 1];
+                        stack[sp++] = a;
+                        flag = Integer.compare(a, 0);
+                    }
+                    case Bytecode.DUP2 -> {
+                        b = stack[--sp];
+                        a = stack[--sp];
+                        stack[sp++] = a;
+                        stack[sp++] = b;
+                        stack[sp++] = a;
+                        stack[sp++] = b;
+                        flag = Integer.compare(b, 0);
+                    }
+                    case Bytecode.CMP -> {
+                        b = stack[--sp];
+                        a = stack[--sp];
+                        flag = Integer.compare(a, b);
+                    }
+                    case Bytecode.BR -> ip = (word >> Bytecode.OPERAND_SHIFT) - 1;
+                    case Bytecode.CALL -> {
+                        callStack[csp++] = ip;
+                        ip = (word >> Bytecode.OPERAND_SHIFT) - 1;
+                    }
+                    case Bytecode.RET -> ip = callStack[--csp];
+                    case Bytecode.EXIT -> stop = true;
+                    default -> {
+                        stackPointer = sp;
+                        zf = flag;
+                        step(word);
+                        sp = stackPointer;
+                        flag = zf;
+                    }
+                }
+                ip++;
+            }
+        } finally {
+            instructionPointer = ip;
+            stackPointer = sp;
+            callStackPointer = csp;
+            zf = flag;
+            executedInstructions = executed;
+            halted = stop;
         }
+    }
 
-        switch (inst.opcode) {
-            case ADD -> push(pop() + pop());
-            case MUL -> push(pop() * pop());
-            case SUB -> {
-                b = pop();
-                a = pop();
-                push(a - b);
+    void step(int word) {
+        int operand = word >> Bytecode.OPERAND_SHIFT;
+        switch (word & Bytecode.OPCODE_MASK) {
+            case Bytecode.READ -> push(market == null ? 0 : clamp(market.read(operand)));
+            case Bytecode.BUY, Bytecode.SELL -> {
+                int volume = pop();
+                int price = pop();
+                boolean placed = market != null && ((word & Bytecode.OPCODE_MASK) == Bytecode.BUY
+                        ? market.buy(price, volume)
+                        : market.sell(price, volume));
+                push(placed ? 1 : 0);
             }
-            case DIV -> {
-                b = pop();
-                a = pop();
-                push(a / b);
-            }
-            case MOD -> {
-                b = pop();
-                a = pop();
-                push(a % b);
-            }
-            case LOADK -> push(inst.value);
-            case LOAD -> push(memory[inst.value]);
-            case STORE -> memory[inst.value] = pop();
-            case DUP -> {
-                a = pop();
-                push(a);
-                push(a);
-            }
-            case DUP2 -> {
-                b = pop();
-                a = pop();
-                push(a);
-                push(b);
-                push(a);
-                push(b);
-            }
-            case CMP -> {
-                b = pop();
-                a = pop();
-                zf = Integer.compare(a, b);
-            }
-            case BR -> instructionPointer = inst.value - 1;
-            case CALL -> {
-                callStack[callStackPointer++] = instructionPointer;
-                instructionPointer = inst.value - 1;
-            }
-            case RET -> instructionPointer = callStack[--callStackPointer];
-            case EXIT -> halted = true;
+            case Bytecode.MEAN -> push(market == null ? 0 : clamp(market.mean(operand)));
+            case Bytecode.MEDIAN -> push(market == null ? 0 : clamp(market.median(operand)));
+            case Bytecode.STD -> push(market == null ? 0 : clamp(market.std(operand)));
+            case Bytecode.MIN -> push(market == null ? 0 : clamp(market.min(operand)));
+            case Bytecode.MAX -> push(market == null ? 0 : clamp(market.max(operand)));
+            default -> throw new IllegalStateException("Opcode " + (word & Bytecode.OPCODE_MASK) + " has no slow path");
         }
     }
 
@@ -121,6 +205,10 @@ public class VM {
         return result;
     }
 
+    static int clamp(long value) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+
     public Integer top() {
         if (stackPointer == 0) return null;
         return stack[stackPointer - 1];
@@ -134,7 +222,19 @@ public class VM {
         return res;
     }
 
+    public int getExecutedInstructions() {
+        return executedInstructions;
+    }
+
     public boolean isHalted() {
         return halted;
     }
+
+    /**
+     * True when the last run stopped on its instruction budget rather than by halting or running
+     * off the end of the code.
+     */
+    public boolean isExhausted() {
+        return !halted && instructionPointer < codeSize;
+    }
 }
@@ -0,0 +1,59 @@
+package exchange.api;
+
+import exchange.constant.OrderSide;
+import exchange.core.AssetManager;
+import exchange.core.InMemoryAccounts;
+import exchange.core.OrderBook;
+import exchange.model.Account;
+import exchange.model.OrderRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoreAssetExchangeControllerTest {
+    @Test
+    void rejectsBatchOrderWithoutSideBeforeReserving() {
+        CoreAssetExchangeController controller = new CoreAssetExchangeController();
+        AssetManager manager = new InMemoryAccounts().manager();
+        controller.assetManager = manager;
+        Account maker = manager.getAccount("maker").block();
+        manager.transferTo(maker, "USD", 100L, "test");
+        manager.transferTo(maker, "BTC", 10L, "test");
+
+        List<OrderRequest> requests = List.of(
+                new OrderRequest("BTC", "USD", OrderSide.BID, 10L, 5L),
+                new OrderRequest("BTC", "USD", null, 10L, 10L));
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> controller.placeOrders("maker", requests).block());
+
+        assertEquals(HttpStatus.BAD_REQUEST, error.getStatus());
+        assertEquals(100L, manager.getPublicAssets(maker).get("USD"));
+        assertEquals(10L, manager.getPublicAssets(maker).get("BTC"));
+        OrderBook book = manager.getOrderBook("BTC", "USD").block();
+        assertTrue(book.getBids().isEmpty());
+        assertTrue(book.getAsks().isEmpty());
+    }
+
+    @Test
+    void rejectsBatchWhoseValueOverflows() {
+        CoreAssetExchangeController controller = new CoreAssetExchangeController();
+        AssetManager manager = new InMemoryAccounts().manager();
+        controller.assetManager = manager;
+        Account maker = manager.getAccount("maker").block();
+        manager.transferTo(maker, "USD", 100L, "test");
+
+        List<OrderRequest> requests = List.of(
+                new OrderRequest("BTC", "USD", OrderSide.BID, Long.MAX_VALUE / 2, 2L),
+                new OrderRequest("BTC", "USD", OrderSide.BID, Long.MAX_VALUE / 2, 2L));
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> controller.placeOrders("maker", requests).block());
+
+        assertEquals(HttpStatus.BAD_REQUEST, error.getStatus());
+        assertEquals(100L, manager.getPublicAssets(maker).get("USD"));
+        assertTrue(manager.getOrderBook("BTC", "USD").block().getBids().isEmpty());
+    }
+}
@@ -0,0 +1,121 @@
+package exchange.api;
+
+import exchange.cluster.ClusterRouter;
+import exchange.constant.OrderSide;
+import exchange.core.AssetManager;
+import exchange.core.InMemoryAccounts;
+import exchange.core.OrderBook;
+import exchange.model.Account;
+import exchange.model.Order;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static exchange.api.OrderEntryProtocol.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderEntryHandlerTest {
+    @Test
+    void acknowledgesPipelinedOrdersBySequence() {
+        OrderEntryHandler handler = new OrderEntryHandler();
+        handler.assetManager = new InMemoryAccounts().manager();
+        handler.clusterRouter = new ClusterRouter();
+        OrderEntryHandler.OrderEntrySession session = new OrderEntryHandler.OrderEntrySession(null);
+
+        ByteBuffer early = handler.handle(session, newOrder(1L, 0, OrderSide.BID, 10L, 1L)).block();
+        assertEquals(REJECT, type(early));
+        assertEquals(NOT_LOGGED_ON, status(early));
+
+        assertEquals(ACK, type(handler.handle(session, logon(2L, "mm")).block()));
+        handler.assetManager.transferTo(session.account, "USD", 1_000L, "test");
+        assertEquals(UNKNOWN_BOOK, status(handler.handle(session, newOrder(3L, 7, OrderSide.BID, 10L, 1L)).block()));
+        ByteBuffer bound = handler.handle(session, bind(4L, 7, "BTC", "USD")).block();
+        assertEquals(ACK, type(bound));
+        assertEquals(7, slot(bound));
+
+        ByteBuffer first = handler.handle(session, newOrder(5L, 7, OrderSide.BID, 10L, 40L)).block();
+        ByteBuffer second = handler.handle(session, newOrder(6L, 7, OrderSide.BID, 10L, 60L)).block();
+        ByteBuffer broke = handler.handle(session, newOrder(7L, 7, OrderSide.BID, 10L, 1L)).block();
+
+        assertEquals(ACK, type(first));
+        assertEquals(5L, sequence(first));
+        assertEquals(6L, sequence(second));
+        assertEquals(orderId(first) + 1, orderId(second));
+        assertEquals(MESSAGE_SIZE, second.capacity());
+        assertEquals(INSUFFICIENT_ASSETS, status(broke));
+        assertEquals(7L, sequence(broke));
+        assertEquals(BAD_MESSAGE, status(handler.handle(session, newOrder(8L, 7, OrderSide.ASK, 0L, 1L)).block()));
+        assertEquals(BAD_MESSAGE, status(handler.handle(session, ByteBuffer.allocate(4)).block()));
+    }
+
+    @Test
+    void rejectsFailedLogonAndKeepsAnsweringLaterRequests() {
+        OrderEntryHandler handler = new OrderEntryHandler();
+        handler.assetManager = new AssetManager() {
+            @Override
+            public Mono<Account> getAccount(String name) {
+                return Mono.error(new IllegalStateException("database down"));
+            }
+        };
+        handler.clusterRouter = new ClusterRouter();
+        OrderEntryHandler.OrderEntrySession session = new OrderEntryHandler.OrderEntrySession(null);
+
+        ByteBuffer failed = handler.handle(session, logon(1L, "mm")).block();
+        ByteBuffer order = handler.handle(session, newOrder(2L, 0, OrderSide.BID, 10L, 1L)).block();
+
+        assertEquals(REJECT, type(failed));
+        assertEquals(ERROR, status(failed));
+        assertEquals(1L, sequence(failed));
+        assertEquals(NOT_LOGGED_ON, status(order));
+        assertEquals(2L, sequence(order));
+    }
+
+    @Test
+    void placesPipelinedOrdersInTheOrderTheyWereSent() {
+        AssetManager market = new InMemoryAccounts().manager();
+        AtomicInteger placements = new AtomicInteger();
+        OrderEntryHandler handler = new OrderEntryHandler();
+        // the first order is slow to reserve, as a contended database row would be
+        handler.assetManager = new AssetManager() {
+            @Override
+            public Mono<Account> getAccount(String name) {
+                return market.getAccount(name);
+            }
+
+            @Override
+            public Mono<OrderBook> getOrderBook(String base, String quote) {
+                return market.getOrderBook(base, quote);
+            }
+
+            @Override
+            public Mono<Order> placeOrder(OrderBook book, Order order, OrderSide side) {
+                Duration delay = Duration.ofMillis(placements.getAndIncrement() == 0 ? 100 : 0);
+                return Mono.delay(delay).then(market.placeOrder(book, order, side));
+            }
+        };
+        handler.clusterRouter = new ClusterRouter();
+        OrderEntryHandler.OrderEntrySession session = new OrderEntryHandler.OrderEntrySession(null, 3);
+        handler.handle(session, logon(1L, "mm")).block();
+        handler.handle(session, bind(2L, 0, "BTC", "USD")).block();
+        market.transferTo(session.account, "USD", 1_000L, "test");
+
+        List<ByteBuffer> acks = Flux.merge(
+                handler.handle(session, newOrder(3L, 0, OrderSide.BID, 10L, 1L)),
+                handler.handle(session, newOrder(4L, 0, OrderSide.BID, 10L, 2L)),
+                handler.handle(session, newOrder(5L, 0, OrderSide.BID, 10L, 3L)),
+                handler.handle(session, newOrder(6L, 0, OrderSide.BID, 10L, 4L))).collectList().block();
+
+        // the fourth is over the in-flight limit and rejected at once, the rest complete in send order
+        assertEquals(List.of(6L, 3L, 4L, 5L), acks.stream().map(OrderEntryProtocol::sequence).toList());
+        assertEquals(THROTTLED, status(acks.get(0)));
+        assertTrue(orderId(acks.get(1)) < orderId(acks.get(2)));
+        assertTrue(orderId(acks.get(2)) < orderId(acks.get(3)));
+        assertEquals(1L, market.getOrderBook("BTC", "USD").block().getTopBid().getVolume());
+        assertEquals(0, session.inFlight.get());
+    }
+}
@@ -0,0 +1,54 @@
+package exchange.cache;
+
+import exchange.model.Account;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountCacheTest {
+    static AccountCache node(RemoteCache remote, int nearSize) {
+        AccountCache cache = new AccountCache();
+        cache.enabled = true;
+        cache.nearSize = nearSize;
+        cache.remote = remote;
+        cache.start();
+        return cache;
+    }
+
+    @Test
+    void sharesLoadsAcrossNodesAndInvalidatesNearCopies() {
+        InMemoryRemoteCache redis = new InMemoryRemoteCache();
+        AccountCache first = node(redis, 2);
+        AccountCache second = node(redis, 2);
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, Optional<Account>> database = name -> {
+            loads.incrementAndGet();
+            Account account = new Account();
+            account.setId(name);
+            account.password = "secret";
+            return Optional.of(account);
+        };
+
+        assertEquals("alice", first.get("alice", database).orElseThrow().getId());
+        assertNull(second.get("alice", database).orElseThrow().password);
+        assertFalse(redis.get(AccountCache.KEY_PREFIX + "alice").orElseThrow().contains("secret"));
+        second.get("alice", database);
+        assertEquals(1, loads.get());
+        assertEquals(1L, second.getNear().getHits());
+
+        first.invalidate("alice");
+        assertNull(second.getNear().get("alice"));
+        second.get("alice", database);
+        assertEquals(2, loads.get());
+
+        first.get("bob", database);
+        first.get("carol", database);
+        first.get("dave", database);
+        assertEquals(2, first.getNear().size());
+        assertTrue(first.get("ghost", name -> Optional.empty()).isEmpty());
+    }
+}
@@ -0,0 +1,236 @@
+package exchange.cluster;
+
+import com.sun.net.httpserver.HttpServer;
+import exchange.cache.InMemoryRemoteCache;
+import exchange.core.OrderBook;
+import exchange.model.Tx;
+import exchange.service.BalanceLedger;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import reactor.core.publisher.Mono;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterRouterTest {
+    static ClusterRouter node(String self, String nodes, InMemoryRemoteCache bus) {
+        ClusterRouter router = new ClusterRouter();
+        router.enabled = true;
+        router.self = self;
+        router.nodes = nodes;
+        router.secret = "s3cret";
+        router.bus = bus;
+        router.ledger = new BalanceLedger();
+        router.start();
+        return router;
+    }
+
+    static String bookOwnedBy(ClusterRouter router, String node) {
+        for (int i = 0; ; i++) {
+            if (router.owner("A" + i + "USD").equals(node)) return "A" + i;
+        }
+    }
+
+    @Test
+    void forwardsBookRequestsToTheOwner() throws Exception {
+        HttpServer owner = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        AtomicReference<String> seen = new AtomicReference<>();
+        owner.createContext("/", exchange -> {
+            seen.set(exchange.getRequestMethod() + " " + exchange.getRequestURI() + " "
+                    + exchange.getRequestHeaders().getFirst(ForwardingFilter.FORWARDED_HEADER));
+            byte[] body = "{\"owner\":true}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(201, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        owner.start();
+        try {
+            String remote = "http://localhost:" + owner.getAddress().getPort();
+            String local = "http://localhost:1";
+            ClusterRouter router = node(local, local + "," + remote, new InMemoryRemoteCache());
+            ForwardingFilter filter = new ForwardingFilter();
+            filter.router = router;
+            String base = bookOwnedBy(router, remote);
+
+            MockHttpServletRequest request = new MockHttpServletRequest("POST", "/book/" + base + "/USD/bid");
+            request.setQueryString("name=alice&price=10&volume=2");
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            MockFilterChain chain = new MockFilterChain();
+            filter.doFilter(request, response, chain);
+
+            assertNull(chain.getRequest());
+            assertEquals(201, response.getStatus());
+            assertEquals("{\"owner\":true}", response.getContentAsString());
+            assertEquals("POST /book/" + base + "/USD/bid?name=alice&price=10&volume=2 " + local, seen.get());
+
+            MockFilterChain localChain = new MockFilterChain();
+            filter.doFilter(new MockHttpServletRequest("GET", "/book/" + bookOwnedBy(router, local) + "/USD"),
+                    new MockHttpServletResponse(), localChain);
+            assertNotNull(localChain.getRequest());
+        } finally {
+            owner.stop(0);
+        }
+    }
+
+    @Test
+    void buffersBatchBodiesForAsyncReaders() throws Exception {
+        ForwardingFilter.BufferedRequest request = new ForwardingFilter.BufferedRequest(
+                new MockHttpServletRequest("POST", "/account/a/orders"), "[1,2]".getBytes(StandardCharsets.UTF_8));
+        ServletInputStream in = request.getInputStream();
+        StringBuilder read = new StringBuilder();
+        boolean[] done = new boolean[1];
+        in.setReadListener(new ReadListener() {
+            @Override
+            public void onDataAvailable() throws IOException {
+                while (in.isReady() && !in.isFinished()) read.append((char) in.read());
+            }
+
+            @Override
+            public void onAllDataRead() {
+                done[0] = true;
+            }
+
+            @Override
+            public void onError(Throwable ex) {
+                fail(ex);
+            }
+        });
+
+        assertEquals("[1,2]", read.toString());
+        assertTrue(done[0]);
+    }
+
+    @Test
+    void givesUpOnAnOwnerThatDoesNotAnswer() throws Exception {
+        HttpServer owner = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        owner.createContext("/", exchange -> {
+            try {
+                Thread.sleep(2_000L);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        owner.start();
+        try {
+            String remote = "http://localhost:" + owner.getAddress().getPort();
+            String local = "http://localhost:1";
+            ClusterRouter router = node(local, local + "," + remote, new InMemoryRemoteCache());
+            router.timeoutMs = 200L;
+            ForwardingFilter filter = new ForwardingFilter();
+            filter.router = router;
+
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            long started = System.currentTimeMillis();
+            filter.doFilter(new MockHttpServletRequest("GET", "/book/" + bookOwnedBy(router, remote) + "/USD"),
+                    response, new MockFilterChain());
+
+            assertEquals(504, response.getStatus());
+            assertTrue(System.currentTimeMillis() - started < 2_000L);
+        } finally {
+            owner.stop(0);
+        }
+    }
+
+    @Test
+    void refusesForgedForwardsAndRoutesBatchesToTheirOwner() throws Exception {
+        HttpServer owner = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        AtomicReference<String> seen = new AtomicReference<>();
+        owner.createContext("/", exchange -> {
+            seen.set(exchange.getRequestHeaders().getFirst(ForwardingFilter.SECRET_HEADER) + " "
+                    + new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        owner.start();
+        try {
+            String remote = "http://localhost:" + owner.getAddress().getPort();
+            String local = "http://localhost:1";
+            ClusterRouter router = node(local, local + "," + remote, new InMemoryRemoteCache());
+            ForwardingFilter filter = new ForwardingFilter();
+            filter.router = router;
+            String remoteBase = bookOwnedBy(router, remote);
+            String localBase = bookOwnedBy(router, local);
+
+            MockHttpServletRequest forged = new MockHttpServletRequest("POST", "/book/" + remoteBase + "/USD/bid");
+            forged.addHeader(ForwardingFilter.FORWARDED_HEADER, remote);
+            forged.addHeader(ForwardingFilter.SECRET_HEADER, "guess");
+            MockHttpServletResponse refused = new MockHttpServletResponse();
+            MockFilterChain forgedChain = new MockFilterChain();
+            filter.doFilter(forged, refused, forgedChain);
+            assertEquals(403, refused.getStatus());
+            assertNull(forgedChain.getRequest());
+
+            String remoteBatch = "[{\"base\":\"" + remoteBase + "\",\"quote\":\"USD\",\"side\":\"BID\",\"price\":1,\"volume\":1}]";
+            MockHttpServletRequest batch = new MockHttpServletRequest("POST", "/account/alice/orders");
+            batch.setContent(remoteBatch.getBytes(StandardCharsets.UTF_8));
+            MockFilterChain batchChain = new MockFilterChain();
+            filter.doFilter(batch, new MockHttpServletResponse(), batchChain);
+            assertNull(batchChain.getRequest());
+            assertEquals("s3cret " + remoteBatch, seen.get());
+
+            String mixed = "[{\"base\":\"" + remoteBase + "\",\"quote\":\"USD\"},{\"base\":\"" + localBase + "\",\"quote\":\"USD\"}]";
+            MockHttpServletRequest split = new MockHttpServletRequest("POST", "/account/alice/orders");
+            split.setContent(mixed.getBytes(StandardCharsets.UTF_8));
+            MockHttpServletResponse conflict = new MockHttpServletResponse();
+            filter.doFilter(split, conflict, new MockFilterChain());
+            assertEquals(409, conflict.getStatus());
+
+            String localBatch = "[{\"base\":\"" + localBase + "\",\"quote\":\"USD\"}]";
+            MockHttpServletRequest own = new MockHttpServletRequest("POST", "/account/alice/orders");
+            own.setContent(localBatch.getBytes(StandardCharsets.UTF_8));
+            MockFilterChain ownChain = new MockFilterChain();
+            filter.doFilter(own, new MockHttpServletResponse(), ownChain);
+            assertEquals(localBatch, new String(ownChain.getRequest().getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+        } finally {
+            owner.stop(0);
+        }
+    }
+
+    @Test
+    void replicasReplayTradesFromTheBus() {
+        InMemoryRemoteCache bus = new InMemoryRemoteCache();
+        String nodes = "http://a,http://b";
+        ClusterRouter a = node("http://a", nodes, bus);
+        ClusterRouter b = node("http://b", nodes, bus);
+        String base = bookOwnedBy(a, "http://a");
+        OrderBook owned = new OrderBook(base, "USD", base + "USD");
+        OrderBook replica = new OrderBook(base, "USD", base + "USD");
+        a.attach(owned);
+        b.attach(replica);
+        var received = replica.getSink().asFlux().take(2).collectList().toFuture();
+
+        a.send(owned.getName(), new Tx(0L, 1L, 100L, 5L));
+        a.send(owned.getName(), new Tx(1L, 2L, 101L, 3L));
+
+        List<Tx> trades = Mono.fromFuture(received).block(Duration.ofSeconds(5));
+        assertEquals(101L, trades.get(1).price);
+        assertEquals(5L, trades.get(0).volume);
+    }
+
+    @Test
+    void refusesToStartWithTheLedger() {
+        ClusterRouter router = new ClusterRouter();
+        router.enabled = true;
+        router.self = "http://a";
+        router.nodes = "http://a";
+        router.ledger = new BalanceLedger() {
+            @Override
+            public boolean isEnabled() {
+                return true;
+            }
+        };
+        assertThrows(IllegalStateException.class, router::start);
+    }
+}
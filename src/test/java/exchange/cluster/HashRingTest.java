@@ -0,0 +1,34 @@
+package exchange.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashRingTest {
+    @Test
+    void spreadsBooksAndMovesFewWhenANodeJoins() {
+        HashRing three = new HashRing(List.of("http://a", "http://b", "http://c"), 128);
+        HashRing four = new HashRing(List.of("http://a", "http://b", "http://c", "http://d"), 128);
+        Map<String, Integer> load = new HashMap<>();
+        int moved = 0;
+        for (int i = 0; i < 10_000; i++) {
+            String book = "A" + i + "USD";
+            String before = three.owner(book);
+            String after = four.owner(book);
+            load.merge(before, 1, Integer::sum);
+            if (!before.equals(after)) {
+                assertEquals("http://d", after);
+                moved++;
+            }
+        }
+
+        assertEquals(3, load.size());
+        load.values().forEach(count -> assertTrue(count > 2_500, load.toString()));
+        assertTrue(moved > 1_500 && moved < 3_500, "moved " + moved);
+        assertEquals(three.owner("BTCUSD"), new HashRing(List.of("http://c", "http://a", "http://b"), 128).owner("BTCUSD"));
+    }
+}
@@ -0,0 +1,177 @@
+package exchange.core;
+
+import exchange.constant.MatchingMode;
+import exchange.constant.OrderSide;
+import exchange.exc.BookHalted;
+import exchange.exc.EngineBusy;
+import exchange.exc.InsufficientAssets;
+import exchange.model.Account;
+import exchange.model.AssetDelta;
+import exchange.model.Order;
+import exchange.service.SettlementService;
+import exchange.strategy.StrategyScheduler;
+import org.junit.jupiter.api.Test;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AssetManagerTest {
+    @Test
+    void settlesAccountsTradingAcrossBooksMatchedInParallel() {
+        AssetManager manager = new InMemoryAccounts().manager();
+        Account buyer = manager.getAccount("buyer").block();
+        Account seller = manager.getAccount("seller").block();
+        manager.transferTo(buyer, "USD", 1_000_000L, "test");
+        for (int i = 0; i < 200; i++) {
+            String base = "A" + i;
+            OrderBook book = manager.getOrderBook(base, "USD").block();
+            manager.transferTo(seller, base, 10L, "test");
+            manager.placeOrder(book, new Order(10L, 3L, buyer), OrderSide.BID).block();
+            manager.placeOrder(book, new Order(10L, 3L, seller), OrderSide.ASK).block();
+        }
+
+        long settled = Flux.range(0, 8).flatMap(step -> manager.advance()).reduce(Long::sum).block();
+
+        assertEquals(200L, settled);
+        assertEquals(1_000_000L - 200L * 30L, manager.getPublicAssets(buyer).get("USD"));
+        assertEquals(200L * 30L, manager.getPublicAssets(seller).get("USD"));
+        for (int i = 0; i < 200; i++) {
+            assertEquals(3L, manager.getPublicAssets(buyer).get("A" + i));
+            assertEquals(7L, manager.getPublicAssets(seller).get("A" + i));
+        }
+    }
+
+    @Test
+    void placesBatchAcrossBooksWithOneNettedReservation() {
+        AssetManager manager = new InMemoryAccounts().manager();
+        Account maker = manager.getAccount("maker").block();
+        manager.transferTo(maker, "USD", 1_000L, "test");
+        manager.transferTo(maker, "BTC", 10L, "test");
+        OrderBook btc = manager.getOrderBook("BTC", "USD").block();
+        OrderBook eth = manager.getOrderBook("ETH", "USD").block();
+
+        OrderBatch ladder = new OrderBatch();
+        for (int i = 1; i <= 5; i++) {
+            ladder.add(btc, new Order(10L + i, 2L, maker), OrderSide.BID);
+            ladder.add(btc, new Order(30L + i, 2L, maker), OrderSide.ASK);
+            ladder.add(eth, new Order(i, 10L, maker), OrderSide.BID);
+        }
+        manager.getOrderId().block();
+        List<Order> placed = manager.placeOrders(ladder).block();
+
+        assertEquals(15, placed.size());
+        for (int i = 0; i < placed.size(); i++) {
+            assertEquals(1L + i, placed.get(i).getId());
+        }
+        assertEquals(5, btc.getBids().size());
+        assertEquals(5, btc.getAsks().size());
+        assertEquals(5, eth.getBids().size());
+        assertEquals(1_000L - 130L - 150L, manager.getPublicAssets(maker).get("USD"));
+        assertEquals(0L, manager.getPublicAssets(maker).get("BTC"));
+
+        OrderBatch tooLarge = new OrderBatch()
+                .add(eth, new Order(1L, 700L, maker), OrderSide.BID)
+                .add(btc, new Order(21L, 1L, maker), OrderSide.BID);
+        RuntimeException error = assertThrows(RuntimeException.class, () -> manager.placeOrders(tooLarge).block());
+        assertInstanceOf(InsufficientAssets.class, Exceptions.unwrap(error));
+        assertEquals(720L, manager.getPublicAssets(maker).get("USD"));
+        assertEquals(5, eth.getBids().size());
+        assertEquals(16L, manager.getOrderId().block());
+    }
+
+    @Test
+    void rejectsNonPositiveAndOverflowingOrdersWithoutTouchingReserves() {
+        AssetManager manager = new InMemoryAccounts().manager();
+        Account maker = manager.getAccount("maker").block();
+        manager.transferTo(maker, "USD", 1_000L, "test");
+        manager.reserve(maker, "USD", 400L);
+        OrderBook btc = manager.getOrderBook("BTC", "USD").block();
+
+        RuntimeException negative = assertThrows(RuntimeException.class,
+                () -> manager.placeOrder(btc, new Order(10L, -40L, maker), OrderSide.BID).block());
+        assertInstanceOf(IllegalArgumentException.class, Exceptions.unwrap(negative));
+        RuntimeException overflow = assertThrows(RuntimeException.class,
+                () -> manager.placeOrder(btc, new Order(Long.MAX_VALUE / 2, 4L, maker), OrderSide.BID).block());
+        assertInstanceOf(ArithmeticException.class, Exceptions.unwrap(overflow));
+
+        assertEquals(600L, manager.getPublicAssets(maker).get("USD"));
+        assertTrue(btc.getBids().isEmpty());
+    }
+
+    @Test
+    void refusesOrdersWhileTheShardRingIsFullAndGivesTheirCollateralBack() throws Exception {
+        AssetManager manager = new InMemoryAccounts().manager();
+        MatchingShard shard = new MatchingShard(0, 1);
+        manager.matchingEngine.enabled = true;
+        manager.matchingEngine.shards = new MatchingShard[]{shard};
+        Account maker = manager.getAccount("maker").block();
+        manager.transferTo(maker, "USD", 1_000L, "test");
+        OrderBook btc = manager.getOrderBook("BTC", "USD").block();
+
+        // the shard is not running yet, so the first order keeps the only slot
+        CompletableFuture<Order> first = manager.placeOrder(btc, new Order(10L, 1L, maker), OrderSide.BID).toFuture();
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> manager.placeOrder(btc, new Order(10L, 20L, maker), OrderSide.BID).block());
+        assertInstanceOf(EngineBusy.class, Exceptions.unwrap(error));
+        assertEquals(990L, manager.getPublicAssets(maker).get("USD"));
+
+        shard.start();
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals(1, btc.getBids().size());
+        shard.stop();
+    }
+
+    @Test
+    void retriesFailedSettlementAndHaltsOnlyTheBookThatKeepsFailing() {
+        InMemoryAccounts accounts = new InMemoryAccounts();
+        SettlementService ledger = accounts.settlement();
+        AtomicInteger outages = new AtomicInteger(2);
+        SettlementService flaky = new SettlementService() {
+            @Override
+            public void apply(List<AssetDelta> deltas) {
+                if (outages.getAndDecrement() > 0) throw new IllegalStateException("database down");
+                if (deltas.stream().anyMatch(delta -> delta.assetId.equals("BAD"))) {
+                    throw new IllegalStateException("constraint violation");
+                }
+                ledger.apply(deltas);
+            }
+        };
+        StrategyScheduler strategies = new StrategyScheduler();
+        strategies.start();
+        AssetManager manager = AssetManager.offline(accounts, flaky, MatchingMode.TICK, strategies);
+        manager.maxSettleRetries = 3;
+        Account buyer = manager.getAccount("buyer").block();
+        Account seller = manager.getAccount("seller").block();
+        manager.transferTo(buyer, "USD", 1_000L, "test");
+        manager.transferTo(seller, "BTC", 10L, "test");
+        manager.transferTo(seller, "BAD", 10L, "test");
+        OrderBook btc = manager.getOrderBook("BTC", "USD").block();
+        OrderBook bad = manager.getOrderBook("BAD", "USD").block();
+        manager.placeOrder(btc, new Order(10L, 2L, buyer), OrderSide.BID).block();
+        manager.placeOrder(btc, new Order(10L, 2L, seller), OrderSide.ASK).block();
+        manager.placeOrder(bad, new Order(10L, 1L, buyer), OrderSide.BID).block();
+        manager.placeOrder(bad, new Order(10L, 1L, seller), OrderSide.ASK).block();
+
+        assertEquals(0L, manager.advance().block());
+        assertEquals(0L, manager.advance().block());
+        assertEquals(2L, manager.unsettled.size());
+        assertEquals(1L, manager.advance().block());
+
+        assertFalse(btc.isHalted());
+        assertTrue(bad.isHalted());
+        assertEquals(1, btc.getTrades().size());
+        assertEquals(2L, manager.getPublicAssets(buyer).get("BTC"));
+        assertEquals(20L, manager.getPublicAssets(seller).get("USD"));
+        assertEquals(3L, manager.time.get());
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> manager.placeOrder(bad, new Order(10L, 1L, buyer), OrderSide.BID).block());
+        assertInstanceOf(BookHalted.class, Exceptions.unwrap(error));
+        manager.stop();
+    }
+}
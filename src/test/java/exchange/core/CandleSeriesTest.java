@@ -0,0 +1,48 @@
+package exchange.core;
+
+import exchange.constant.CandleInterval;
+import exchange.view.CandleView;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandleSeriesTest {
+    @Test
+    void aggregatesTradesIntoBuckets() {
+        CandleSeries series = new CandleSeries(CandleInterval.S1, 8);
+        series.update(1000L, 10L, 1L);
+        series.update(1500L, 14L, 2L);
+        series.update(1999L, 9L, 3L);
+        CandleView last = series.update(3200L, 11L, 4L);
+
+        assertEquals(3000L, last.start);
+        List<CandleView> candles = series.latest(10);
+        assertEquals(2, candles.size());
+        CandleView first = candles.get(0);
+        assertEquals(1000L, first.start);
+        assertEquals(10L, first.open);
+        assertEquals(14L, first.high);
+        assertEquals(9L, first.low);
+        assertEquals(9L, first.close);
+        assertEquals(6L, first.volume);
+        assertEquals(3L, first.trades);
+    }
+
+    @Test
+    void keepsOnlyTheMostRecentBuckets() {
+        CandleSeries series = new CandleSeries(CandleInterval.S1, 4);
+        for (int i = 0; i < 10; i++) {
+            series.update(i * 1000L, i, 1L);
+        }
+
+        List<CandleView> latest = series.latest(100);
+        assertEquals(4, latest.size());
+        assertEquals(6000L, latest.get(0).start);
+        assertEquals(9000L, latest.get(3).start);
+        assertEquals(List.of(7000L, 8000L), series.since(7000L, 2).stream().map(c -> c.start).toList());
+        assertEquals(6000L, series.since(0L, 1).get(0).start);
+        assertTrue(series.since(10_000L, 5).isEmpty());
+    }
+}
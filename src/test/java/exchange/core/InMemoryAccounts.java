@@ -0,0 +1,17 @@
+package exchange.core;
+
+import exchange.constant.MatchingMode;
+import exchange.sim.SimulatedAccounts;
+import exchange.strategy.StrategyScheduler;
+
+public class InMemoryAccounts extends SimulatedAccounts {
+    public AssetManager manager() {
+        StrategyScheduler strategyScheduler = new StrategyScheduler();
+        strategyScheduler.start();
+        return manager(strategyScheduler);
+    }
+
+    public AssetManager manager(StrategyScheduler strategyScheduler) {
+        return AssetManager.offline(this, settlement(), MatchingMode.TICK, strategyScheduler);
+    }
+}
@@ -0,0 +1,172 @@
+package exchange.core;
+
+import exchange.cluster.ClusterRouter;
+import exchange.constant.MatchingMode;
+import exchange.constant.OrderSide;
+import exchange.model.Account;
+import exchange.model.AssetDelta;
+import exchange.model.Order;
+import exchange.service.JpaAccountStore;
+import exchange.service.SettlementService;
+import exchange.sim.SimulatedAccounts;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MarketRecoveryTest {
+    @TempDir
+    Path directory;
+
+    final SimulatedAccounts accounts = new SimulatedAccounts();
+
+    AssetManager start() throws Exception {
+        return start(accounts.settlement());
+    }
+
+    AssetManager start(SettlementService settlement) throws Exception {
+        MarketRecovery recovery = new MarketRecovery();
+        recovery.enabled = true;
+        recovery.directory = directory.toString();
+        recovery.segmentSize = 4096;
+        recovery.snapshotIntervalMs = 3_600_000L;
+        recovery.accountService = accounts;
+        AssetManager manager = new AssetManager();
+        manager.accountStore = new JpaAccountStore(accounts, settlement, Schedulers.immediate());
+        manager.marketRecovery = recovery;
+        manager.clusterRouter = new ClusterRouter();
+        manager.recover();
+        return manager;
+    }
+
+    void place(AssetManager manager, OrderBook book, String account, OrderSide side, long price, long volume) {
+        Order order = new Order(price, volume, accounts.getAccountByName(account).orElseThrow());
+        order.setId(manager.orderIdCounter.getAndIncrement());
+        book.place(order, side, 1000L + order.getId());
+    }
+
+    @Test
+    void replaysSnapshotAndJournalIntoTheSameBooks() throws Exception {
+        AssetManager first = start();
+        OrderBook btc = first.getOrderBook("BTC", "USD").block();
+        OrderBook eth = first.getOrderBook("ETH", "USD").block();
+        for (int i = 0; i < 100; i++) {
+            place(first, btc, "a" + i % 3, OrderSide.ASK, 100 + i % 10, 5);
+        }
+        place(first, btc, "b", OrderSide.BID, 104, 120);
+        btc.match(5000L);
+        first.marketRecovery.snapshot(first);
+
+        place(first, eth, "c", OrderSide.BID, 10, 3);
+        eth.setMode(MatchingMode.CONTINUOUS);
+        place(first, eth, "d", OrderSide.ASK, 9, 2);
+        place(first, btc, "b", OrderSide.BID, 101, 7);
+        btc.match(6000L);
+        first.marketRecovery.stop();
+
+        AssetManager second = start();
+        OrderBook btcAgain = second.getOrderBook("BTC", "USD").block();
+        OrderBook ethAgain = second.getOrderBook("ETH", "USD").block();
+
+        assertEquals(btc.getBids(), btcAgain.getBids());
+        assertEquals(btc.getAsks(), btcAgain.getAsks());
+        assertEquals(eth.getBids(), ethAgain.getBids());
+        assertEquals(MatchingMode.CONTINUOUS, ethAgain.getMode());
+        assertEquals(btc.getTrades().size(), btcAgain.getTrades().size());
+        assertEquals(btc.getLastPrice(), btcAgain.getLastPrice());
+        assertEquals(1, ethAgain.getTrades().size());
+        assertEquals(first.orderIdCounter.get(), second.orderIdCounter.get());
+        assertEquals(btc.getTopAsk().getId(), btcAgain.getTopAsk().getId());
+        second.marketRecovery.stop();
+    }
+
+    @Test
+    void snapshotKeepsBooksAttachedBeforeTheyAreListed() throws Exception {
+        AssetManager first = start();
+        // attached and journaled, but not yet in orderBooks, as inside getOrderBook
+        OrderBook sol = first.newOrderBook("SOL", "USD", MatchingMode.TICK);
+        first.marketRecovery.attach(sol);
+        place(first, sol, "a", OrderSide.ASK, 20, 4);
+        first.marketRecovery.snapshot(first);
+        first.orderBooks.put(sol.getName(), sol);
+        first.marketRecovery.stop();
+
+        AssetManager second = start();
+        OrderBook solAgain = second.getOrderBook("SOL", "USD").block();
+        assertEquals(sol.getAsks(), solAgain.getAsks());
+        second.marketRecovery.stop();
+    }
+
+    @Test
+    void resettlesFillsThatNeverGotASettlementRecord() throws Exception {
+        SettlementService down = new SettlementService() {
+            @Override
+            public void apply(List<AssetDelta> deltas) {
+                throw new IllegalStateException("database down");
+            }
+        };
+        AssetManager first = start(down);
+        OrderBook btc = first.getOrderBook("BTC", "USD").block();
+        place(first, btc, "buyer", OrderSide.BID, 12, 5);
+        place(first, btc, "seller", OrderSide.ASK, 10, 5);
+        assertEquals(0L, first.settle(new SettlementBatch(btc, btc.match(7000L))).block());
+        first.marketRecovery.snapshot(first);
+        place(first, btc, "seller", OrderSide.ASK, 11, 5);
+        place(first, btc, "buyer", OrderSide.BID, 11, 5);
+        assertEquals(0L, first.settle(new SettlementBatch(btc, btc.match(8000L))).block());
+        first.marketRecovery.stop();
+
+        assertThrows(IOException.class, () -> start(down));
+
+        AssetManager second = start();
+        Account buyer = accounts.getAccountByName("buyer").orElseThrow();
+        Account seller = accounts.getAccountByName("seller").orElseThrow();
+        assertEquals(10L, accounts.getPublicAssets(buyer).get("BTC"));
+        assertEquals(-115L, accounts.getAssetByName(buyer, "USD").orElseThrow().getAmount());
+        assertEquals(115L, accounts.getPublicAssets(seller).get("USD"));
+        assertTrue(second.getOrderBook("BTC", "USD").block().getUnsettled().isEmpty());
+        second.marketRecovery.stop();
+
+        AssetManager third = start();
+        assertEquals(10L, accounts.getPublicAssets(buyer).get("BTC"));
+        third.marketRecovery.stop();
+    }
+
+    @Test
+    void keepsTradeHistoryOutOfTheSnapshot() throws Exception {
+        AssetManager first = start();
+        OrderBook btc = first.getOrderBook("BTC", "USD").block();
+        for (int i = 0; i < 300; i++) {
+            place(first, btc, "a", OrderSide.ASK, 100 + i % 7, 1);
+            place(first, btc, "b", OrderSide.BID, 110, 1);
+        }
+        first.settle(new SettlementBatch(btc, btc.match(5000L))).block();
+        first.marketRecovery.snapshot(first);
+        Path trades = first.marketRecovery.tradesPath(btc.bookId);
+        long snapshotSize = Files.size(MarketRecovery.latestSnapshot(directory));
+        assertEquals(300L * MarketRecovery.TRADE_BYTES, Files.size(trades));
+
+        place(first, btc, "a", OrderSide.ASK, 100, 1);
+        place(first, btc, "b", OrderSide.BID, 110, 1);
+        first.settle(new SettlementBatch(btc, btc.match(6000L))).block();
+        first.marketRecovery.snapshot(first);
+        assertEquals(301L * MarketRecovery.TRADE_BYTES, Files.size(trades));
+        assertEquals(snapshotSize, Files.size(MarketRecovery.latestSnapshot(directory)));
+        first.marketRecovery.stop();
+
+        AssetManager second = start();
+        OrderBook btcAgain = second.getOrderBook("BTC", "USD").block();
+        assertEquals(301L, btcAgain.getTrades().size());
+        for (long seq = 295; seq < 301; seq++) {
+            assertEquals(btc.getTrades().getPrice(seq), btcAgain.getTrades().getPrice(seq));
+            assertEquals(btc.getTrades().getTime(seq), btcAgain.getTrades().getTime(seq));
+        }
+        second.marketRecovery.stop();
+    }
+}
@@ -0,0 +1,118 @@
+package exchange.core;
+
+import exchange.constant.MatchingMode;
+import exchange.constant.OrderSide;
+import exchange.model.Account;
+import exchange.model.Fill;
+import exchange.model.Order;
+import exchange.view.DepthDeltaView;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderBookTest {
+    long nextId = 0L;
+
+    Order order(long price, long volume) {
+        Order order = new Order(price, volume, new Account());
+        order.setId(nextId++);
+        return order;
+    }
+
+    @Test
+    void matchesOnlyCrossingLevelsInPriceTimeOrder() {
+        OrderBook book = new OrderBook("A", "B", "AB");
+        book.placeAsk(order(101, 5));
+        book.placeAsk(order(100, 3));
+        book.placeAsk(order(103, 4));
+        book.placeBid(order(99, 7));
+        book.placeBid(order(102, 6));
+
+        List<Fill> fills = book.match(0L);
+
+        assertEquals(2, fills.size());
+        assertEquals(100, fills.get(0).price);
+        assertEquals(3, fills.get(0).volume);
+        assertEquals(101, fills.get(1).price);
+        assertEquals(3, fills.get(1).volume);
+        assertEquals(Map.of(99L, 7L), book.getBids());
+        assertEquals(List.of(101L, 103L), List.copyOf(book.getAsks().keySet()));
+        assertEquals(2L, book.getAsks().get(101L));
+        assertEquals(99L, book.getTopBid().getPrice());
+        assertEquals(2L, book.getTopAsk().getRealVolume());
+        assertTrue(book.match(0L).isEmpty());
+
+        DepthSnapshot depth = book.getDepth();
+        assertSame(depth, book.getDepth());
+        assertEquals(2, depth.getAskLevels());
+        assertEquals(101L, depth.getAskPrice(0));
+        assertEquals(2L, depth.getAskVolume(0));
+        assertEquals(101L, depth.getLastPrice());
+        book.placeBid(order(98, 1));
+        assertNotSame(depth, book.getDepth());
+        assertEquals(2, book.getDepth().getBidLevels());
+    }
+
+    @Test
+    void fillsSameLevelFifo() {
+        OrderBook book = new OrderBook("A", "B", "AB");
+        Order first = order(100, 2);
+        Order second = order(100, 2);
+        book.placeAsk(first);
+        book.placeAsk(second);
+        book.placeBid(order(100, 3));
+
+        List<Fill> fills = book.match(0L);
+
+        assertEquals(2, fills.size());
+        assertSame(first, fills.get(0).ask);
+        assertSame(second, fills.get(1).ask);
+        assertEquals(1L, second.getRealVolume());
+        assertEquals(Map.of(100L, 1L), book.getAsks());
+        assertTrue(book.getBids().isEmpty());
+    }
+
+    @Test
+    void continuousModeMatchesOnArrival() {
+        OrderBook book = new OrderBook("A", "B", "AB", MatchingMode.CONTINUOUS);
+        assertTrue(book.place(order(100, 5), OrderSide.ASK, 0L).isEmpty());
+
+        List<Fill> fills = book.place(order(105, 2), OrderSide.BID, 0L);
+
+        assertEquals(1, fills.size());
+        assertEquals(100, fills.get(0).price);
+        assertEquals(2, fills.get(0).volume);
+        assertEquals(Map.of(100L, 3L), book.getAsks());
+        assertTrue(book.getBids().isEmpty());
+        assertFalse(book.isDirty());
+    }
+
+    @Test
+    void publishesCoalescedDepthDeltasInSequence() throws Exception {
+        OrderBook book = new OrderBook("A", "B", "AB");
+        CompletableFuture<List<DepthDeltaView>> stream = book.getDepthSink().asFlux().take(2).collectList().toFuture();
+        book.placeAsk(order(100, 3));
+        book.placeAsk(order(100, 2));
+        book.placeBid(order(99, 4));
+        book.match(0L);
+        book.match(0L);
+        book.placeBid(order(100, 5));
+        book.match(1L);
+
+        List<DepthDeltaView> deltas = stream.get(5, TimeUnit.SECONDS);
+        assertEquals(1L, deltas.get(0).sequence);
+        assertEquals(1, deltas.get(0).ask.size());
+        assertEquals(5L, deltas.get(0).ask.get(0).volume);
+        DepthDeltaView delta = deltas.get(1);
+        assertEquals(2L, delta.sequence);
+        assertEquals(100L, delta.ask.get(0).price);
+        assertEquals(0L, delta.ask.get(0).volume);
+        assertEquals(0L, delta.bid.get(0).volume);
+        assertEquals(2L, book.getDepth().getSequence());
+    }
+}
@@ -0,0 +1,108 @@
+package exchange.core;
+
+import exchange.model.Account;
+import exchange.model.Order;
+import exchange.vm.Compiler;
+import exchange.vm.VM;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RollingWindowTest {
+    @Test
+    void matchesRecomputedStatisticsOverEveryWindow() {
+        SplittableRandom random = new SplittableRandom(7L);
+        long[] prices = new long[2000];
+        for (int capacity : new int[]{1, 2, 5, 64}) {
+            RollingWindow window = new RollingWindow(capacity);
+            for (int i = 0; i < prices.length; i++) {
+                prices[i] = 100 + random.nextInt(20);
+                window.add(prices[i]);
+                long[] recent = Arrays.copyOfRange(prices, Math.max(0, i + 1 - capacity), i + 1);
+                Arrays.sort(recent);
+                double mean = Arrays.stream(recent).average().orElseThrow();
+                double variance = Arrays.stream(recent).mapToDouble(p -> (p - mean) * (p - mean)).sum() / recent.length;
+                int n = recent.length;
+                long median = n % 2 == 1 ? recent[n / 2] : Math.round((recent[n / 2 - 1] + recent[n / 2]) / 2.0);
+
+                assertEquals(Math.round(mean), window.mean());
+                assertEquals(Math.round(Math.sqrt(variance)), window.std());
+                assertEquals(recent[0], window.min());
+                assertEquals(recent[n - 1], window.max());
+                assertEquals(median, window.median());
+            }
+        }
+    }
+
+    @Test
+    void scriptsReadBookStatistics() {
+        OrderBook book = new OrderBook("A", "B", "AB");
+        Account account = new Account();
+        long[] prices = {10, 30, 20, 50, 40};
+        for (int i = 0; i < prices.length; i++) {
+            book.placeAsk(new Order(prices[i], 1, account));
+            book.placeBid(new Order(prices[i], 1, account));
+            book.match(i);
+            if (i == 1) book.getWindow(3);
+        }
+        BookMarketContext market = new BookMarketContext(null, book, null);
+        assertEquals(40L, market.read(0));
+        assertEquals(50L, market.read(1));
+        assertEquals(0L, market.read(5));
+        assertEquals(37L, market.mean(3));
+        assertEquals(40L, market.median(3));
+        assertEquals(20L, market.min(3));
+        assertEquals(50L, market.max(0));
+        assertEquals(30L, market.median(0));
+        assertFalse(market.buy(10, 1));
+
+        VM vm = VM.local().bind(market);
+        vm.run(Compiler.compile("max 3\nmin 3\nsub\nread 1\nadd"));
+        assertEquals(80, vm.result().result);
+    }
+
+    @Test
+    void keepsDeviationExactForPricesWhoseSquaresOverflowALong() {
+        RollingWindow window = new RollingWindow(4);
+        long base = 5_000_000_000L;
+        for (long offset : new long[]{0, 7, 2, 9, 4, 4, 1, 7}) {
+            window.add(base + offset);
+        }
+        // the last four are base + 4, 4, 1 and 7: mean base + 4, variance 4.5
+        assertEquals(base + 4, window.mean());
+        assertEquals(Math.round(Math.sqrt(4.5)), window.std());
+        assertEquals(base + 1, window.min());
+        assertEquals(base + 7, window.max());
+
+        RollingWindow wide = new RollingWindow(100_000);
+        for (int i = 0; i < 200_000; i++) {
+            wide.add(100_000_000L + (i % 2) * 10);
+        }
+        assertEquals(5L, wide.std());
+    }
+
+    @Test
+    void oneOffScriptsDoNotKeepWindowsAndIdleOnesAreEvicted() {
+        OrderBook book = new OrderBook("A", "B", "AB");
+        Account account = new Account();
+        for (long price = 1; price <= 4; price++) {
+            book.placeAsk(new Order(price, 1, account));
+            book.placeBid(new Order(price, 1, account));
+            book.match(price);
+        }
+        BookMarketContext oneOff = new BookMarketContext(null, book, null, true);
+        assertEquals(3L, oneOff.mean(3));
+        assertTrue(book.windows.isEmpty());
+
+        BookMarketContext strategy = new BookMarketContext(null, book, null);
+        assertEquals(3L, strategy.mean(3));
+        assertEquals(1, book.windows.size());
+        book.evictWindows(1);
+        assertEquals(1, book.windows.size());
+        book.evictWindows(1);
+        assertTrue(book.windows.isEmpty());
+    }
+}
@@ -0,0 +1,70 @@
+package exchange.core;
+
+import exchange.model.Account;
+import exchange.model.AssetDelta;
+import exchange.model.Fill;
+import exchange.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SettlementBatchTest {
+    static Account account(String id) {
+        Account account = new Account();
+        account.setId(id);
+        return account;
+    }
+
+    @Test
+    void netsTransfersPerAccountAndAssetAcrossBooks() {
+        Account alice = account("alice");
+        Account bob = account("bob");
+        OrderBook btc = new OrderBook("BTC", "USD", "BTCUSD");
+        OrderBook eth = new OrderBook("ETH", "USD", "ETHUSD");
+        Order aliceBid = new Order(10, 5, alice);
+        Order bobAsk = new Order(10, 5, bob);
+        Order bobBid = new Order(3, 4, bob);
+        Order aliceAsk = new Order(3, 4, alice);
+
+        SettlementBatch batch = new SettlementBatch();
+        batch.add(btc, List.of(new Fill(aliceBid, bobAsk, 10, 2), new Fill(aliceBid, bobAsk, 10, 3)));
+        batch.add(eth, List.of(new Fill(bobBid, aliceAsk, 3, 4)));
+
+        List<AssetDelta> deltas = batch.netTransfers();
+
+        assertEquals(6, deltas.size());
+        assertEquals(3, batch.size());
+        assertDelta(deltas.get(0), "alice", "BTC", 5, 0);
+        assertDelta(deltas.get(1), "alice", "ETH", -4, -4);
+        assertDelta(deltas.get(2), "alice", "USD", -50 + 12, -50);
+        assertDelta(deltas.get(3), "bob", "BTC", -5, -5);
+        assertDelta(deltas.get(4), "bob", "ETH", 4, 0);
+        assertDelta(deltas.get(5), "bob", "USD", 50 - 12, -12);
+    }
+
+    @Test
+    void releasesTheWholeBidReserveWhenFilledBelowTheBidPrice() {
+        Account alice = account("alice");
+        Account bob = account("bob");
+        OrderBook btc = new OrderBook("BTC", "USD", "BTCUSD");
+        Order aliceBid = new Order(12, 5, alice);
+        Order bobAsk = new Order(9, 5, bob);
+
+        List<AssetDelta> deltas = new SettlementBatch(btc, List.of(new Fill(aliceBid, bobAsk, 9, 5))).netTransfers();
+
+        assertEquals(4, deltas.size());
+        assertDelta(deltas.get(0), "alice", "BTC", 5, 0);
+        assertDelta(deltas.get(1), "alice", "USD", -45, -60);
+        assertDelta(deltas.get(2), "bob", "BTC", -5, -5);
+        assertDelta(deltas.get(3), "bob", "USD", 45, 0);
+    }
+
+    static void assertDelta(AssetDelta delta, String account, String asset, long amount, long reserved) {
+        assertEquals(account, delta.accountId);
+        assertEquals(asset, delta.assetId);
+        assertEquals(amount, delta.amount);
+        assertEquals(reserved, delta.reserved);
+    }
+}
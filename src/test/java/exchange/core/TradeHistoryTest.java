@@ -0,0 +1,42 @@
+package exchange.core;
+
+import exchange.model.Tx;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TradeHistoryTest {
+    @Test
+    void pagesAndSeeksAcrossChunks() {
+        TradeHistory history = new TradeHistory();
+        int count = TradeHistory.CHUNK_SIZE * 5 + 17;
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, history.append(1000L + i / 10, 100L + i, 1L + i % 7));
+        }
+
+        assertEquals(count, history.size());
+        List<Tx> page = history.read(TradeHistory.CHUNK_SIZE - 2, 4);
+        assertEquals(4, page.size());
+        assertEquals(TradeHistory.CHUNK_SIZE - 2, page.get(0).seq);
+        assertEquals(100L + TradeHistory.CHUNK_SIZE + 1, page.get(3).price);
+
+        assertEquals(0L, history.seekTime(0L));
+        assertEquals(500L, history.seekTime(1050L));
+        assertEquals(count, history.seekTime(Long.MAX_VALUE));
+        assertTrue(history.read(count, 10).isEmpty());
+        assertEquals(count - 1, history.tail(3).get(2).seq);
+    }
+
+    @Test
+    void keepsTimeColumnMonotonic() {
+        TradeHistory history = new TradeHistory();
+        history.append(10L, 1L, 1L);
+        history.append(5L, 1L, 1L);
+        history.append(20L, 1L, 1L);
+
+        assertEquals(10L, history.getTime(1));
+        assertEquals(2L, history.seekTime(11L));
+    }
+}
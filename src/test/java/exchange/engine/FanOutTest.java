@@ -0,0 +1,77 @@
+package exchange.engine;
+
+import exchange.constant.OverflowPolicy;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FanOutTest {
+    static class Collector extends BaseSubscriber<Integer> {
+        final List<Integer> received = new ArrayList<>();
+        Throwable error;
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+        }
+
+        @Override
+        protected void hookOnNext(Integer value) {
+            received.add(value);
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            error = throwable;
+        }
+    }
+
+    FanOut<Integer> fanOut(OverflowPolicy policy) {
+        return new FanOut<>(4, policy, Schedulers.immediate());
+    }
+
+    @Test
+    void slowSubscriberDropsOldestWithoutHoldingBackOthers() {
+        FanOut<Integer> fanOut = fanOut(OverflowPolicy.DROP_OLDEST);
+        Collector slow = new Collector();
+        Collector fast = new Collector();
+        fanOut.asFlux().subscribe(slow);
+        fanOut.asFlux().subscribe(fast);
+        fast.request(Long.MAX_VALUE);
+        for (int i = 0; i < 10; i++) fanOut.publish(i);
+
+        assertEquals(10, fast.received.size());
+        assertEquals(4, fanOut.stats().maxLag);
+        assertEquals(6, fanOut.stats().dropped);
+        slow.request(10);
+        assertEquals(List.of(6, 7, 8, 9), slow.received);
+        assertEquals(0, fanOut.stats().maxLag);
+    }
+
+    @Test
+    void conflatesToLatest() {
+        FanOut<Integer> fanOut = fanOut(OverflowPolicy.CONFLATE);
+        Collector slow = new Collector();
+        fanOut.asFlux().subscribe(slow);
+        for (int i = 0; i < 6; i++) fanOut.publish(i);
+        slow.request(10);
+        assertEquals(List.of(4, 5), slow.received);
+    }
+
+    @Test
+    void disconnectsSubscriberThatOverflows() {
+        FanOut<Integer> fanOut = fanOut(OverflowPolicy.DISCONNECT);
+        Collector slow = new Collector();
+        fanOut.asFlux().subscribe(slow);
+        for (int i = 0; i < 5; i++) fanOut.publish(i);
+
+        assertNotNull(slow.error);
+        assertEquals(0, fanOut.getSubscriberCount());
+        assertEquals(1, fanOut.stats().disconnected);
+    }
+}
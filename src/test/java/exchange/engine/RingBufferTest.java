@@ -0,0 +1,73 @@
+package exchange.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferTest {
+    static class Slot {
+        long producer;
+        long value;
+    }
+
+    @Test
+    void rejectsNonPowerOfTwoCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(12, Slot::new));
+    }
+
+    @Test
+    void tryNextFailsWhenFull() {
+        RingBuffer<Slot> ring = new RingBuffer<>(2, Slot::new);
+        ring.publish(ring.tryNext());
+        ring.publish(ring.tryNext());
+        assertEquals(-1L, ring.tryNext());
+        assertEquals(2, ring.drain(slot -> { }, 16));
+        assertEquals(2L, ring.tryNext());
+    }
+
+    @Test
+    void deliversEveryEventInProducerOrder() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 50_000;
+        RingBuffer<Slot> ring = new RingBuffer<>(1024, Slot::new);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int id = p;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    long sequence = ring.next();
+                    Slot slot = ring.get(sequence);
+                    slot.producer = id;
+                    slot.value = i;
+                    ring.publish(sequence);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        long[] lastSeen = new long[producers];
+        Arrays.fill(lastSeen, -1L);
+        AtomicLong received = new AtomicLong();
+        while (received.get() < (long) producers * perProducer) {
+            int drained = ring.drain(slot -> {
+                int producer = (int) slot.producer;
+                assertEquals(lastSeen[producer] + 1, slot.value);
+                lastSeen[producer] = slot.value;
+                received.incrementAndGet();
+            }, 256);
+            if (drained == 0) Thread.yield();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (long last : lastSeen) {
+            assertEquals(perProducer - 1, last);
+        }
+        assertFalse(ring.hasPending());
+    }
+}
@@ -0,0 +1,98 @@
+package exchange.service;
+
+import exchange.repo.AssetBatchRepository;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BalanceLedgerTest {
+    @Test
+    void tracksBalancesPerAccountAcrossSlotGrowth() {
+        BalanceLedger ledger = new BalanceLedger();
+        for (int i = 0; i < 3000; i++) {
+            ledger.apply("acc" + (i % 100), "asset" + (i / 100), 10L, 0L);
+        }
+        ledger.apply("acc7", "asset3", 5L, 12L);
+
+        assertEquals(30, ledger.publicAssets("acc7").size());
+        assertEquals(3L, ledger.publicAssets("acc7").get("asset3"));
+        assertEquals(12L, ledger.get("acc7", "asset3").orElseThrow().getReserved());
+        assertTrue(ledger.get("acc7", "missing").isEmpty());
+        assertEquals(Map.of(), ledger.publicAssets("nobody"));
+    }
+
+    @Test
+    void reservesOnlyWhatIsAvailable() throws Exception {
+        BalanceLedger ledger = new BalanceLedger();
+        ledger.apply("a", "USD", 100L, 0L);
+
+        Thread[] threads = new Thread[4];
+        int[] accepted = new int[threads.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int index = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50; i++) {
+                    if (ledger.tryReserve("a", "USD", 1L)) accepted[index]++;
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(100, accepted[0] + accepted[1] + accepted[2] + accepted[3]);
+        assertEquals(100L, ledger.get("a", "USD").orElseThrow().getReserved());
+        assertFalse(ledger.tryReserve("a", "USD", 1L));
+        assertFalse(ledger.tryReserve("b", "USD", 1L));
+        assertThrows(IllegalArgumentException.class, () -> ledger.tryReserve("a", "USD", -50L));
+    }
+
+    @Test
+    void drainsEachDirtyRowOnceWithLatestValues() {
+        BalanceLedger ledger = new BalanceLedger();
+        ledger.flushBatchSize = 2;
+        ledger.apply("a", "X", 10L, 0L);
+        ledger.apply("b", "X", 5L, 0L);
+        ledger.apply("a", "X", -3L, 1L);
+        ledger.apply("a", "Y", 1L, 0L);
+
+        List<Object[]> first = ledger.drainDirty();
+        List<Object[]> second = ledger.drainDirty();
+
+        assertEquals(2, first.size());
+        assertArrayEquals(new Object[]{"a", "X", 7L, 1L}, first.get(0));
+        assertArrayEquals(new Object[]{"b", "X", 5L, 0L}, first.get(1));
+        assertEquals(1, second.size());
+        assertArrayEquals(new Object[]{"a", "Y", 1L, 0L}, second.get(0));
+        assertTrue(ledger.drainDirty().isEmpty());
+
+        ledger.requeue(second);
+        assertEquals(1, ledger.drainDirty().size());
+    }
+
+    @Test
+    void reportsChangesDurableOnlyOnceEveryDirtyRowIsWritten() {
+        BalanceLedger ledger = new BalanceLedger();
+        ledger.flushBatchSize = 1;
+        ledger.assetBatchRepository = new AssetBatchRepository() {
+            @Override
+            public int[] upsert(List<Object[]> rows) {
+                return new int[rows.size()];
+            }
+        };
+        ledger.apply("a", "X", 10L, 0L);
+        ledger.apply("b", "X", 5L, 0L);
+        Mono<Void> flushed = ledger.flushed().cache();
+        boolean[] done = new boolean[1];
+        flushed.subscribe(null, null, () -> done[0] = true);
+
+        assertEquals(1, ledger.flush());
+        assertFalse(done[0]);
+        assertEquals(1, ledger.flush());
+        assertTrue(done[0]);
+        assertNull(ledger.flushed().block());
+    }
+}
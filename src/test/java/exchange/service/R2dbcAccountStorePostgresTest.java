@@ -0,0 +1,34 @@
+package exchange.service;
+
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Runs the account store scenarios against a real Postgres, so the shipped
+ * {@code on conflict ... do update} upsert and its {@code $1..$4} binds are executed as-is.
+ * Skipped when Docker is not available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class R2dbcAccountStorePostgresTest extends R2dbcAccountStoreTest {
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:14-alpine");
+
+    @Override
+    ConnectionFactory connectionFactory() {
+        String url = "r2dbc:postgresql://" + POSTGRES.getHost() + ":" +
+                POSTGRES.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT) + "/" + POSTGRES.getDatabaseName();
+        return ConnectionFactories.get(ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, POSTGRES.getUsername())
+                .option(ConnectionFactoryOptions.PASSWORD, POSTGRES.getPassword())
+                .build());
+    }
+
+    @Override
+    String upsertDelta() {
+        return R2dbcAccountStore.UPSERT_DELTA;
+    }
+}
@@ -0,0 +1,109 @@
+package exchange.service;
+
+import exchange.model.Account;
+import exchange.model.AssetDelta;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class R2dbcAccountStoreTest {
+    R2dbcAccountStore store;
+
+    @BeforeEach
+    void setUp() {
+        ConnectionFactory connectionFactory = connectionFactory();
+        DatabaseClient client = DatabaseClient.create(connectionFactory);
+        client.sql("drop table if exists asset").then().block();
+        client.sql("drop table if exists account").then().block();
+        client.sql("create table account (account_id varchar(255) primary key, password varchar(255))")
+                .then().block();
+        client.sql("create table asset (account_id varchar(255) not null, asset_id varchar(255) not null, " +
+                        "amount bigint not null, reserved bigint not null, primary key (account_id, asset_id))")
+                .then().block();
+        store = new R2dbcAccountStore(connectionFactory, new BalanceLedger());
+        store.upsertDelta = upsertDelta();
+    }
+
+    ConnectionFactory connectionFactory() {
+        return ConnectionFactories.get("r2dbc:h2:mem:///accounts" + System.nanoTime() + "?options=DB_CLOSE_DELAY=-1");
+    }
+
+    String upsertDelta() {
+        // H2 has no "on conflict do update"; this merge adds deltas the same way
+        return "merge into asset a using (select cast($1 as varchar(255)) as account_id, cast($2 as varchar(255)) as asset_id, " +
+                "cast($3 as bigint) as amount, cast($4 as bigint) as reserved) d on a.account_id = d.account_id and a.asset_id = d.asset_id " +
+                "when matched then update set amount = a.amount + d.amount, reserved = a.reserved + d.reserved " +
+                "when not matched then insert (account_id, asset_id, amount, reserved) " +
+                "values (d.account_id, d.asset_id, d.amount, d.reserved)";
+    }
+
+    static AssetDelta delta(String account, String asset, long amount, long reserved) {
+        AssetDelta delta = new AssetDelta(account, asset);
+        delta.amount = amount;
+        delta.reserved = reserved;
+        return delta;
+    }
+
+    @Test
+    void createsAccountsAndReservesOnlyWhatIsAvailable() {
+        Account alice = store.getAccount("alice").block();
+        assertEquals("alice", store.getAccount("alice").block().getId());
+        store.apply(alice, "USD", 100L, 0L).block();
+
+        long accepted = Flux.range(0, 150)
+                .flatMap(i -> store.tryReserve(alice, "USD", 1L))
+                .filter(Boolean::booleanValue)
+                .count()
+                .block();
+
+        assertEquals(100L, accepted);
+        assertFalse(store.tryReserve(alice, "EUR", 1L).block());
+        assertEquals(Map.of("USD", 0L), store.getPublicAssets(alice).block());
+    }
+
+    @Test
+    void settlesDeltasInsertingMissingRows() {
+        Account alice = store.getAccount("alice").block();
+        Account bob = store.getAccount("bob").block();
+        store.apply(alice, "USD", 50L, 50L).block();
+        store.apply(bob, "BTC", 5L, 5L).block();
+
+        store.settle(List.of(
+                delta("alice", "BTC", 5L, 0L),
+                delta("alice", "USD", -50L, -50L),
+                delta("bob", "BTC", -5L, -5L),
+                delta("bob", "USD", 50L, 0L)
+        )).block();
+
+        assertEquals(Map.of("BTC", 5L, "USD", 0L), store.getPublicAssets(alice).block());
+        assertEquals(Map.of("BTC", 0L, "USD", 50L), store.getPublicAssets(bob).block());
+    }
+
+    @Test
+    void reservesAllOrNothing() {
+        Account alice = store.getAccount("alice").block();
+        store.apply(alice, "BTC", 10L, 0L).block();
+        store.apply(alice, "USD", 100L, 0L).block();
+
+        AssetDelta shortfall = store.reserveAll(List.of(
+                delta("alice", "BTC", 0L, 4L),
+                delta("alice", "USD", 0L, 101L)
+        )).block();
+
+        assertEquals("USD", shortfall.assetId);
+        assertEquals(Map.of("BTC", 10L, "USD", 100L), store.getPublicAssets(alice).block());
+        assertNull(store.reserveAll(List.of(
+                delta("alice", "BTC", 0L, 4L),
+                delta("alice", "USD", 0L, 100L)
+        )).block());
+        assertEquals(Map.of("BTC", 6L, "USD", 0L), store.getPublicAssets(alice).block());
+    }
+}
@@ -0,0 +1,34 @@
+package exchange.sim;
+
+import exchange.constant.MatchingMode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulatorTest {
+    static SimulationReport run(long seed, MatchingMode mode) {
+        Simulator simulator = new Simulator();
+        SimulationConfig config = new SimulationConfig();
+        config.seed = seed;
+        config.books = 2;
+        config.durationMs = 2_000L;
+        config.mode = mode;
+        return simulator.run(config);
+    }
+
+    @Test
+    void sameSeedReproducesTheSameRun() {
+        SimulationReport first = run(42L, MatchingMode.TICK);
+        SimulationReport second = run(42L, MatchingMode.TICK);
+
+        assertTrue(first.orders > 1000);
+        assertTrue(first.trades > 0);
+        assertEquals(0, first.rejected);
+        assertEquals(20, first.ticks);
+        assertEquals(first.orders, second.orders);
+        assertEquals(first.trades, second.trades);
+        assertEquals(first.checksum, second.checksum);
+        assertNotEquals(first.checksum, run(43L, MatchingMode.TICK).checksum);
+        assertEquals(run(7L, MatchingMode.CONTINUOUS).checksum, run(7L, MatchingMode.CONTINUOUS).checksum);
+    }
+}
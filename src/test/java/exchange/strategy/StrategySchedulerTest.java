@@ -0,0 +1,48 @@
+package exchange.strategy;
+
+import exchange.core.AssetManager;
+import exchange.core.InMemoryAccounts;
+import exchange.core.OrderBook;
+import exchange.model.Account;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StrategySchedulerTest {
+    @Test
+    void strategiesTradeWithinTheSameTick() throws Exception {
+        StrategyScheduler scheduler = new StrategyScheduler();
+        scheduler.start();
+        AssetManager manager = new InMemoryAccounts().manager(scheduler);
+        OrderBook book = manager.getOrderBook("BTC", "USD").block();
+        Account buyer = manager.getAccount("buyer").block();
+        Account seller = manager.getAccount("seller").block();
+        manager.transferTo(buyer, "USD", 1_000_000L, "test");
+        manager.transferTo(seller, "BTC", 1_000L, "test");
+
+        for (int i = 0; i < 40; i++) {
+            scheduler.register(manager, book, buyer, "loadk 100\nloadk 2\nbuy", i == 0 ? 3 : 0);
+            scheduler.register(manager, book, seller, "loadk 100\nloadk 2\nsell", 0);
+        }
+        Strategy spinner = scheduler.register(manager, book, buyer, ":loop\nloadk 100\nloadk 1\nbuy\nbr :loop", 500);
+        Strategy broken = scheduler.register(manager, book, seller, "loadk 1\nloadk 0\ndiv", 0);
+        Strategy broke = scheduler.register(manager, book, manager.getAccount("broke").block(), "loadk 100\nloadk 2\nbuy", 0);
+
+        manager.advance().block();
+
+        assertEquals(40, book.getTrades().size());
+        assertTrue(book.getBids().isEmpty());
+        assertTrue(book.getAsks().isEmpty());
+        assertEquals(80L, manager.getPublicAssets(buyer).get("BTC"));
+        assertEquals(500, spinner.getLastInstructions());
+        assertEquals(1L, spinner.getFailures());
+        assertEquals(1L, broken.getFailures());
+        assertEquals(1L, broke.getOrdersRejected());
+        for (Strategy strategy : scheduler.getStrategies()) {
+            assertEquals(1L, strategy.getRuns());
+            if (strategy != spinner && strategy != broken) {
+                assertEquals(0L, strategy.getFailures());
+            }
+        }
+    }
+}
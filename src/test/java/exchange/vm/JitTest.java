@@ -0,0 +1,143 @@
+package exchange.vm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JitTest {
+    static final List<String> PROGRAMS = List.of(
+            VMTest.SUM_LOOP,
+            """
+            loadk 10
+            store $n
+            call :square
+            load $n
+            loadk 3
+            mul
+            add
+            exit
+            :square {
+                load $n
+                dup
+                mul
+                ret
+            }
+            """,
+            """
+            loadk 100000000
+            loadk -100000000
+            add
+            loadkNE 7
+            loadkEQ 9
+            loadk 17
+            loadk 5
+            dup2
+            mod
+            store $r
+            div
+            load $r
+            sub
+            loadk -3
+            cmp
+            loadkLE 1
+            loadkGE 2
+            loadkLT 3
+            loadkGT 4
+            """,
+            """
+            loadk 3
+            store $i
+            :again
+            loadk 100
+            load $i
+            buy
+            loadk 90
+            loadk 2
+            sell
+            add
+            read 2
+            mean 5
+            median 5
+            std
+            min 3
+            max 3
+            load $i
+            loadk 1
+            sub
+            dup
+            store $i
+            brGT :again
+            br 1000
+            loadk 99
+            """,
+            """
+            loadk 1
+            :spin
+            loadk 1
+            add
+            br :spin
+            """);
+
+    static class StubMarket implements MarketContext {
+        long calls = 0L;
+
+        long next(long seed) {
+            return seed * 31 + ++calls;
+        }
+
+        public long read(int back) { return next(back); }
+        public boolean buy(long price, long volume) { return next(price + volume) % 2 == 0; }
+        public boolean sell(long price, long volume) { return next(price - volume) % 3 == 0; }
+        public long mean(int window) { return next(window); }
+        public long median(int window) { return -next(window); }
+        public long std(int window) { return next(window) / 2; }
+        public long min(int window) { return next(window) - 100; }
+        public long max(int window) { return Long.MAX_VALUE - next(window); }
+    }
+
+    static void assertSameState(VM expected, VM actual) {
+        assertEquals(expected.top(), actual.top());
+        assertEquals(expected.executedInstructions, actual.executedInstructions);
+        assertEquals(expected.instructionPointer, actual.instructionPointer);
+        assertEquals(expected.stackPointer, actual.stackPointer);
+        assertEquals(expected.callStackPointer, actual.callStackPointer);
+        assertEquals(expected.zf, actual.zf);
+        assertEquals(expected.halted, actual.halted);
+        assertArrayEquals(expected.memory, actual.memory);
+        assertArrayEquals(Arrays.copyOf(expected.stack, expected.stackPointer), Arrays.copyOf(actual.stack, actual.stackPointer));
+    }
+
+    @Test
+    void compiledScriptsMatchTheInterpreter() throws Throwable {
+        for (String program : PROGRAMS) {
+            for (int budget : new int[]{0, 1, 7, 50, 5000}) {
+                Script script = Compiler.compile(program);
+                script.maxInstructions = budget == 0 && program.contains(":spin") ? 3000 : budget;
+                VM interpreted = new VM().bind(new StubMarket());
+                interpreted.interpret(script);
+
+                VM compiled = new VM().bind(new StubMarket());
+                Jit.compile(script).run(compiled);
+                compiled.interpret(script);
+                assertSameState(interpreted, compiled);
+            }
+        }
+    }
+
+    @Test
+    void switchesToCompiledCodeAfterThreshold() {
+        Script script = Compiler.compile(VMTest.SUM_LOOP);
+        for (int i = 0; i < Jit.threshold - 1; i++) {
+            VM.local().run(script);
+        }
+        assertNull(script.compiled);
+        VM vm = VM.local();
+        vm.run(script);
+        assertNotNull(script.compiled);
+        assertEquals(499500, vm.result().result);
+        assertEquals(12005, vm.result().instructions);
+    }
+}
@@ -0,0 +1,121 @@
+package exchange.vm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VMTest {
+    static final String SUM_LOOP = """
+            loadk 0
+            store $i
+            loadk 0
+            store $sum
+            :loop
+            load $sum
+            load $i
+            add
+            store $sum
+            load $i
+            loadk 1
+            add
+            dup
+            store $i
+            loadk 1000
+            cmp
+            brLT :loop
+            load $sum
+            """;
+
+    @Test
+    void opcodeConstantsMatchTheEnum() throws Exception {
+        for (Opcode opcode : Opcode.values()) {
+            assertEquals(opcode.ordinal(), Bytecode.class.getDeclaredField(opcode.name()).getInt(null), opcode.name());
+        }
+        assertTrue(Bytecode.LOADK_WIDE >= Opcode.values().length);
+    }
+
+    @Test
+    void runsPackedScriptsAndReusesTheLocalInstance() {
+        Script loop = Compiler.compile(SUM_LOOP);
+        VM vm = VM.local();
+        vm.run(loop);
+        assertEquals(499500, vm.result().result);
+        assertEquals(12005, vm.result().instructions);
+
+        Script calls = Compiler.compile("""
+                loadk 10
+                store $n
+                call :square
+                load $n
+                loadk 3
+                mul
+                add
+                exit
+                :square {
+                    load $n
+                    dup
+                    mul
+                    ret
+                }
+                """);
+        VM again = VM.local();
+        assertSame(vm, again);
+        again.run(calls);
+        assertTrue(again.isHalted());
+        assertEquals(130, again.result().result);
+    }
+
+    @Test
+    void widensLargeConstantsAndSkipsFalseConditions() {
+        Script script = Compiler.compile("""
+                loadk 100000000
+                loadk -100000000
+                add
+                loadkNE 7
+                loadkEQ 9
+                """);
+        assertEquals(2, script.getConstants().length);
+        assertEquals(Opcode.LOADK, script.getInstructions().get(1).getOpcode());
+        assertEquals(-100000000, script.getInstructions().get(1).getValue());
+        assertEquals(9, VM.exec(script).result().result);
+    }
+
+    @Test
+    void compilesScopesCommentsAndRejectsUnknownTokens() {
+        Script script = Compiler.compile("# header only\r\n"
+                + "LoadK 4 # trailing comment\r\n"
+                + "store $a\n"
+                + "{\n"
+                + "  loadk 6\n"
+                + "  store $b\n"
+                + "  load $a\n"
+                + "  load $b\n"
+                + "  add\n"
+                + "}\n");
+        List<Instruction> instructions = script.getInstructions();
+        assertEquals(7, instructions.size());
+        assertEquals(0, instructions.get(1).getValue());
+        assertEquals(1, instructions.get(3).getValue());
+        assertEquals(10, VM.exec(script).result().result);
+
+        assertThrows(IllegalArgumentException.class, () -> Compiler.compile("jump 3"));
+        assertThrows(IllegalArgumentException.class, () -> Compiler.compile("br :nowhere"));
+        assertThrows(IllegalArgumentException.class, () -> Compiler.compile("}"));
+    }
+
+    @Test
+    void cachesScriptsBySourceDigest() {
+        ScriptCache cache = new ScriptCache();
+        cache.capacity = 2;
+        cache.start();
+        Script first = cache.get(SUM_LOOP);
+        assertSame(first, cache.get(SUM_LOOP));
+        assertNotSame(first, cache.get(SUM_LOOP + "\n"));
+        cache.get("loadk 1");
+        assertNotSame(first, cache.get(SUM_LOOP));
+        assertEquals(2, cache.getScripts().size());
+        assertEquals(1, cache.getScripts().getHits());
+    }
+}